@@ -0,0 +1,81 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.MetricsProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.service.DeepLearningFaceDetectionService;
+import com.icaroerasmo.service.FaceDetectionNetPool;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single network face detection latency per input resolution. Frames are
+ * synthetic unless {@code -p video=<file>} points at a local recording.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DetectionBenchmark {
+
+    private static final int FRAMES = 16;
+    private static final int BATCH = 4;
+
+    @Param({"640x360", "1280x720", "1920x1080", "3840x2160"})
+    private String resolution;
+
+    @Param({""})
+    private String video;
+
+    private FaceDetectionNetPool netPool;
+    private DeepLearningFaceDetectionService detectionService;
+    private List<Mat> frames;
+    private final int[] boxes = new int[4 * DeepLearningFaceDetectionService.MAX_DETECTIONS];
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        DetectionProperties properties = new DetectionProperties();
+        properties.setPoolSize(1);
+        netPool = new FaceDetectionNetPool(properties, new NativeMemoryTracker(new MemoryProperties()));
+        detectionService = new DeepLearningFaceDetectionService(netPool, new MetricsRegistry(new MetricsProperties()));
+        frames = SyntheticImages.frames(video, SyntheticImages.size(resolution), FRAMES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frames.forEach(Mat::close);
+        netPool.close();
+    }
+
+    private Mat nextFrame() {
+        return frames.get(next++ % frames.size());
+    }
+
+    @Benchmark
+    public List<Rect> detect() {
+        return detectionService.detect(nextFrame());
+    }
+
+    // Same pass without building Rect objects
+    @Benchmark
+    public int detectIntoArray() {
+        return detectionService.detect(nextFrame(), boxes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<List<Rect>> detectBatch() {
+        int from = next % (frames.size() - BATCH + 1);
+        next += BATCH;
+        return detectionService.detectBatch(frames.subList(from, from + BATCH));
+    }
+}
@@ -0,0 +1,76 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.MetricsProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.service.DeepLearningFaceDetectionService;
+import com.icaroerasmo.service.FaceDetectionNetPool;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Detection throughput with one caller thread per pooled network
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DetectionPoolBenchmark {
+
+    private static final int FRAMES = 32;
+
+    @Param({"1", "2", "4", "8"})
+    private int poolSize;
+
+    @Param({"1280x720"})
+    private String resolution;
+
+    @Param({""})
+    private String video;
+
+    private FaceDetectionNetPool netPool;
+    private DeepLearningFaceDetectionService detectionService;
+    private ExecutorService executor;
+    private List<Mat> frames;
+
+    @Setup
+    public void setUp() throws Exception {
+        DetectionProperties properties = new DetectionProperties();
+        properties.setPoolSize(poolSize);
+        netPool = new FaceDetectionNetPool(properties, new NativeMemoryTracker(new MemoryProperties()));
+        detectionService = new DeepLearningFaceDetectionService(netPool, new MetricsRegistry(new MetricsProperties()));
+        executor = Executors.newFixedThreadPool(poolSize);
+        frames = SyntheticImages.frames(video, SyntheticImages.size(resolution), FRAMES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        frames.forEach(Mat::close);
+        netPool.close();
+    }
+
+    // Reported as frames per second
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int detectFrames() throws Exception {
+        List<Future<Integer>> results = new ArrayList<>(FRAMES);
+        for (Mat frame : frames) {
+            results.add(executor.submit(() -> detectionService.detect(frame).size()));
+        }
+        int faces = 0;
+        for (Future<Integer> result : results) {
+            faces += result.get();
+        }
+        return faces;
+    }
+}
@@ -0,0 +1,51 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.MetricsProperties;
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.service.DetectionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// shouldAnnounceDetection() called from many recognition workers at once
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DetectionServiceBenchmark {
+
+    @Param({"1", "8"})
+    private int cameras;
+
+    @Param({"1", "16"})
+    private int people;
+
+    private DetectionService detectionService;
+    private String[] cameraNames;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        detectionService = new DetectionService(new PipelineProperties(), new MetricsRegistry(new MetricsProperties()));
+        cameraNames = new String[cameras];
+        for (int i = 0; i < cameras; i++) {
+            cameraNames[i] = "camera-" + i;
+        }
+        names = new String[people];
+        for (int i = 0; i < people; i++) {
+            names[i] = i == 0 ? "Unknown" : "person-" + i;
+        }
+    }
+
+    @Benchmark
+    public boolean shouldAnnounceDetection() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return detectionService.shouldAnnounceDetection(cameraNames[random.nextInt(cameras)],
+                names[random.nextInt(people)]);
+    }
+}
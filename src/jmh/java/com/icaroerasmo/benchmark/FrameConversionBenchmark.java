@@ -0,0 +1,55 @@
+package com.icaroerasmo.benchmark;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a grabbed {@link Frame} into a {@link Mat}. The converter
+ * wraps the frame buffer, so the pipeline also clones it before queueing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FrameConversionBenchmark {
+
+    @Param({"640x360", "1280x720", "1920x1080", "3840x2160"})
+    private String resolution;
+
+    private OpenCVFrameConverter.ToMat converter;
+    private Mat source;
+    private Frame frame;
+
+    @Setup
+    public void setUp() {
+        converter = new OpenCVFrameConverter.ToMat();
+        source = SyntheticImages.frame(SyntheticImages.size(resolution), 7);
+        frame = converter.convert(source).clone();
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.close();
+        source.close();
+        converter.close();
+    }
+
+    @Benchmark
+    public Mat toMat() {
+        return converter.convert(frame);
+    }
+
+    @Benchmark
+    public int toMatAndClone() {
+        Mat copy = converter.convert(frame).clone();
+        int rows = copy.rows();
+        copy.close();
+        return rows;
+    }
+}
@@ -0,0 +1,79 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.model.Prediction;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.recognition.LbphBinaryModel;
+import com.icaroerasmo.recognition.LbphModelFile;
+import com.icaroerasmo.recognition.LbphSearchEngine;
+import com.icaroerasmo.recognition.OpenCvRecognitionModel;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end prediction of one face crop, histogram included, with OpenCV's
+ * LBPH predict() against the binary model using scalar and vectorized
+ * scoring. Both sides are trained on the same faces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LbphPredictBenchmark {
+
+    @Param({"1000", "10000"})
+    private int gallery;
+
+    @Param({"opencv", "scalar", "vector"})
+    private String backend;
+
+    private Path file;
+    private LbphSearchEngine searchEngine;
+    private FaceRecognitionModel model;
+    private Mat face;
+
+    @Setup
+    public void setUp() throws Exception {
+        LBPHFaceRecognizer faceRecognizer = SyntheticGallery.train(gallery, 42);
+        face = SyntheticImages.face(SyntheticImages.FACE_SIZE, new Random(7));
+
+        if ("opencv".equals(backend)) {
+            model = new OpenCvRecognitionModel(faceRecognizer);
+            return;
+        }
+
+        file = Files.createTempFile("lbph-", ".bin");
+        LbphModelFile.write(faceRecognizer, file);
+        faceRecognizer.close();
+
+        RecognitionProperties properties = new RecognitionProperties();
+        properties.setVectorized("vector".equals(backend));
+        searchEngine = new LbphSearchEngine(properties);
+        model = LbphBinaryModel.open(file, searchEngine);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        model.close();
+        face.close();
+        if (searchEngine != null) {
+            searchEngine.stop();
+        }
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public Prediction predict() {
+        return model.predict(face);
+    }
+}
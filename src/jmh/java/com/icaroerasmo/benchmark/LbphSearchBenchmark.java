@@ -0,0 +1,68 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.recognition.LbphBinaryModel;
+import com.icaroerasmo.recognition.LbphSearchEngine;
+import com.icaroerasmo.recognition.TopK;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-k chi-square search over galleries of 1k, 10k and 100k histograms,
+ * scalar against vectorized scoring. A 100k gallery with the default 8x8
+ * grid is a 6.5 GB file, written to the temp directory for the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LbphSearchBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int gallery;
+
+    @Param({"false", "true"})
+    private boolean vectorized;
+
+    @Param({"1", "0"})
+    private int searchThreads;
+
+    private Path file;
+    private LbphSearchEngine searchEngine;
+    private LbphBinaryModel model;
+    private float[] query;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = Files.createTempFile("lbph-", ".bin");
+        SyntheticGallery.write(file, gallery, 42);
+
+        RecognitionProperties properties = new RecognitionProperties();
+        properties.setVectorized(vectorized);
+        // 0 keeps the default of one thread per core
+        if (searchThreads > 0) {
+            properties.setSearchThreads(searchThreads);
+        }
+        searchEngine = new LbphSearchEngine(properties);
+        model = LbphBinaryModel.open(file, searchEngine);
+        query = SyntheticGallery.histogram(model.getDimensions(), new Random(7));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        model.close();
+        searchEngine.stop();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public TopK search() {
+        return searchEngine.search(model, query, 1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.recognition.FaceNormalizer;
+import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Grayscale conversion of whole frames and normalization of the face crops fed to the recognizer
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatUtilBenchmark {
+
+    @Param({"640x360", "1280x720", "1920x1080", "3840x2160"})
+    private String resolution;
+
+    private final NativeMemoryTracker memoryTracker = new NativeMemoryTracker(new MemoryProperties());
+    private final MatUtil matUtil = new MatUtil(memoryTracker);
+    private final FaceNormalizer faceNormalizer = new FaceNormalizer(new RecognitionProperties(), memoryTracker);
+    private Mat frame;
+    private Rect face;
+
+    @Setup
+    public void setUp() {
+        Size size = SyntheticImages.size(resolution);
+        frame = SyntheticImages.frame(size, 7);
+        int side = size.height() / 3;
+        face = new Rect(size.width() / 2 - side / 2, size.height() / 3, side, side);
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.close();
+        faceNormalizer.close();
+    }
+
+    @Benchmark
+    public int convertToGray() {
+        Mat gray = matUtil.convertToGray(frame);
+        int rows = gray.rows();
+        matUtil.releaseResources(gray);
+        return rows;
+    }
+
+    @Benchmark
+    public int normalizeFace() {
+        return faceNormalizer.normalize(frame, face).rows();
+    }
+}
@@ -0,0 +1,101 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.recognition.LbphBinaryModel;
+import com.icaroerasmo.recognition.LbphModelFile;
+import com.icaroerasmo.recognition.LbphSearchEngine;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of the OpenCV XML dataset against the memory mapped binary
+ * model, plus the heap and resident memory each one holds right after
+ * loading (reported as the heapBytes and residentBytes secondary results).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ModelLoadBenchmark {
+
+    @Param({"1000", "10000"})
+    private int gallery;
+
+    private Path directory;
+    private Path xml;
+    private Path binary;
+    private LbphSearchEngine searchEngine;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("lbph-load-");
+        xml = directory.resolve("trained_dataset.xml");
+        binary = directory.resolve("trained_dataset.bin");
+        try (LBPHFaceRecognizer faceRecognizer = SyntheticGallery.train(gallery, 42)) {
+            faceRecognizer.write(xml.toString());
+            LbphModelFile.write(faceRecognizer, binary);
+        }
+        searchEngine = new LbphSearchEngine(new RecognitionProperties());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        searchEngine.stop();
+        Files.deleteIfExists(xml);
+        Files.deleteIfExists(binary);
+        Files.deleteIfExists(directory);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long heapBytes;
+        public long residentBytes;
+
+        private long heapBefore;
+        private long residentBefore;
+
+        @Setup(Level.Invocation)
+        public void before() {
+            System.gc();
+            heapBefore = usedHeap();
+            residentBefore = Pointer.physicalBytes();
+        }
+
+        void after() {
+            System.gc();
+            heapBytes = usedHeap() - heapBefore;
+            residentBytes = Pointer.physicalBytes() - residentBefore;
+        }
+
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    @Benchmark
+    public int loadXml(Footprint footprint) {
+        try (LBPHFaceRecognizer faceRecognizer = LBPHFaceRecognizer.create()) {
+            faceRecognizer.read(xml.toString());
+            footprint.after();
+            return faceRecognizer.getNeighbors();
+        }
+    }
+
+    @Benchmark
+    public int loadBinary(Footprint footprint) throws Exception {
+        LbphBinaryModel model = LbphBinaryModel.open(binary, searchEngine);
+        footprint.after();
+        int count = model.getCount();
+        model.close();
+        return count;
+    }
+}
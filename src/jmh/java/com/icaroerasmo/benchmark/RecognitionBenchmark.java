@@ -0,0 +1,93 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.MetricsProperties;
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.model.FaceRecognition;
+import com.icaroerasmo.recognition.FaceNormalizer;
+import com.icaroerasmo.recognition.LbphBinaryModel;
+import com.icaroerasmo.recognition.LbphRecognizerBackend;
+import com.icaroerasmo.recognition.LbphSearchEngine;
+import com.icaroerasmo.service.FaceRecognitionService;
+import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognition of 1, 5 and 20 faces per frame against the binary LBPH model.
+ * Faces are given as boxes, the way the pipeline hands them over after the
+ * detection stage, since synthetic frames contain nothing the SSD detector
+ * would pick up; {@link DetectionBenchmark} covers that half of
+ * {@code FaceRecognitionService.test}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RecognitionBenchmark {
+
+    @Param({"1", "5", "20"})
+    private int faces;
+
+    @Param({"1000", "10000"})
+    private int gallery;
+
+    @Param({"1920x1080"})
+    private String resolution;
+
+    private Path file;
+    private LbphSearchEngine searchEngine;
+    private LbphBinaryModel model;
+    private FaceRecognitionService recognitionService;
+    private Mat frame;
+    private List<Rect> boxes;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = Files.createTempFile("lbph-", ".bin");
+        SyntheticGallery.write(file, gallery, 42);
+        searchEngine = new LbphSearchEngine(new RecognitionProperties());
+        model = LbphBinaryModel.open(file, searchEngine);
+
+        // Detection, training and the manifest are not exercised by recognize()
+        NativeMemoryTracker memoryTracker = new NativeMemoryTracker(new MemoryProperties());
+        MatUtil matUtil = new MatUtil(memoryTracker);
+        recognitionService = new FaceRecognitionService(null, null, null,
+                new LbphRecognizerBackend(searchEngine, matUtil),
+                new FaceNormalizer(new RecognitionProperties(), memoryTracker), matUtil,
+                new MetricsRegistry(new MetricsProperties()));
+
+        Size size = SyntheticImages.size(resolution);
+        frame = SyntheticImages.frame(size, 7);
+        boxes = new ArrayList<>(faces);
+        int side = Math.min(size.width() / 5, size.height() / 4);
+        for (int i = 0; i < faces; i++) {
+            boxes.add(new Rect((i % 5) * side, (i / 5) * side, side, side));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        model.close();
+        searchEngine.stop();
+        frame.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public FaceRecognition recognize() {
+        return recognitionService.recognize(model, frame, boxes);
+    }
+}
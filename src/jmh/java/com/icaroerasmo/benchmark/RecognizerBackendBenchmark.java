@@ -0,0 +1,181 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.model.Prediction;
+import com.icaroerasmo.recognition.EmbeddingModel;
+import com.icaroerasmo.recognition.EmbeddingModelFile;
+import com.icaroerasmo.recognition.EmbeddingNetPool;
+import com.icaroerasmo.recognition.EmbeddingScorer;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.recognition.LbphBinaryModel;
+import com.icaroerasmo.recognition.LbphSearchEngine;
+import com.icaroerasmo.recognition.TopK;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognition backends side by side on the same gallery sizes: predict()
+ * is the whole per-face cost, network or histogram included, match() only
+ * the gallery scan for an already computed query. load() reports the bytes
+ * each enrolled face takes on disk, on the heap and in native memory once
+ * the model is loaded (fileBytesPerFace, heapBytesPerFace and
+ * residentBytesPerFace secondary results).
+ * <p>
+ * The embedding backend runs the network of the model parameter, or a small
+ * synthetic one when it is left to "synthetic".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RecognizerBackendBenchmark {
+
+    @Param({"1000", "10000"})
+    private int gallery;
+
+    @Param({"lbph", "embedding"})
+    private String backend;
+
+    @Param({"synthetic"})
+    private String model;
+
+    @Param({"128"})
+    private int dimensions;
+
+    private Path directory;
+    private Path file;
+    private RecognitionProperties properties;
+    private LbphSearchEngine searchEngine;
+    private EmbeddingNetPool netPool;
+    private FaceRecognitionModel recognitionModel;
+    private Mat face;
+    private float[] query;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("backend-");
+        file = directory.resolve("model.bin");
+        properties = new RecognitionProperties();
+
+        if ("lbph".equals(backend)) {
+            SyntheticGallery.write(file, gallery, 42);
+            searchEngine = new LbphSearchEngine(properties);
+            LbphBinaryModel lbph = LbphBinaryModel.open(file, searchEngine);
+            face = SyntheticImages.face(SyntheticImages.FACE_SIZE, new Random(7));
+            query = lbph.histogramOf(face);
+            recognitionModel = lbph;
+            return;
+        }
+
+        RecognitionProperties.Embedding embedding = properties.getEmbedding();
+        if ("synthetic".equals(model)) {
+            Path net = directory.resolve("embedding.onnx");
+            SyntheticEmbeddingNet.write(net, embedding.getInputWidth(), embedding.getInputHeight(), dimensions, 42);
+            embedding.setModel(net.toString());
+        } else {
+            embedding.setModel(model);
+        }
+        embedding.setPoolSize(1);
+        netPool = new EmbeddingNetPool(properties, new NativeMemoryTracker(new MemoryProperties()));
+
+        EmbeddingModelFile.write(file, SyntheticGallery.embeddings(gallery, netPool.getDimensions(), 42));
+        recognitionModel = new EmbeddingModel(EmbeddingModelFile.read(file), Double.MAX_VALUE, netPool,
+                EmbeddingScorer.create(properties.isVectorized()));
+
+        face = SyntheticImages.frame(new Size(embedding.getInputWidth(), embedding.getInputHeight()), 7);
+        query = netPool.embed(face);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        recognitionModel.close();
+        face.close();
+        if (searchEngine != null) {
+            searchEngine.stop();
+        }
+        if (netPool != null) {
+            netPool.close();
+        }
+        try (var files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Prediction predict() {
+        return recognitionModel.predict(face);
+    }
+
+    @Benchmark
+    public int match() {
+        TopK topK = recognitionModel instanceof LbphBinaryModel lbph
+                ? searchEngine.search(lbph, query, 1)
+                : ((EmbeddingModel) recognitionModel).search(query, 1);
+        return topK.label(0);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long fileBytesPerFace;
+        public long heapBytesPerFace;
+        public long residentBytesPerFace;
+
+        private long heapBefore;
+        private long residentBefore;
+
+        @Setup(Level.Invocation)
+        public void before() {
+            System.gc();
+            heapBefore = usedHeap();
+            residentBefore = Pointer.physicalBytes();
+        }
+
+        void after(Path file, int count) throws Exception {
+            System.gc();
+            fileBytesPerFace = Files.size(file) / count;
+            heapBytesPerFace = (usedHeap() - heapBefore) / count;
+            residentBytesPerFace = (Pointer.physicalBytes() - residentBefore) / count;
+        }
+
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    // Loads the model and touches every stored face once, so mapped pages are counted as resident.
+    // Measured once since JMH sums event counters over iterations; with -i read the per-iteration lines.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public Object load(Footprint footprint) throws Exception {
+        if ("lbph".equals(backend)) {
+            LbphBinaryModel lbph = LbphBinaryModel.open(file, searchEngine);
+            searchEngine.search(lbph, query, 1);
+            footprint.after(file, gallery);
+            return lbph;
+        }
+        EmbeddingModel embedding = new EmbeddingModel(EmbeddingModelFile.read(file), Double.MAX_VALUE, netPool,
+                EmbeddingScorer.create(properties.isVectorized()));
+        embedding.search(query, 1);
+        footprint.after(file, gallery);
+        return embedding;
+    }
+}
@@ -0,0 +1,169 @@
+package com.icaroerasmo.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes a small ONNX face embedding network with random weights, so the
+ * embedding backend can be benchmarked without downloading a real model:
+ * two strided 3x3 convolutions, global average pooling and a fully
+ * connected layer to the embedding size. It costs a few MFLOPs, far less
+ * than a real network; pass the path of one through the model parameter
+ * for representative inference times.
+ * <p>
+ * The protobuf messages are encoded by hand to avoid an onnx dependency.
+ */
+final class SyntheticEmbeddingNet {
+
+    private static final int FLOAT = 1;
+    private static final int ATTRIBUTE_INT = 2;
+    private static final int ATTRIBUTE_INTS = 7;
+
+    private SyntheticEmbeddingNet() {
+    }
+
+    static void write(Path target, int width, int height, int dimensions, long seed) throws IOException {
+        Random random = new Random(seed);
+
+        ByteArrayOutputStream graph = new ByteArrayOutputStream();
+        message(graph, 1, node("conv1", "Conv", new String[]{"data", "w1", "b1"}, "c1",
+                ints("kernel_shape", 3, 3), ints("strides", 2, 2), ints("pads", 1, 1, 1, 1)));
+        message(graph, 1, node("relu1", "Relu", new String[]{"c1"}, "r1"));
+        message(graph, 1, node("conv2", "Conv", new String[]{"r1", "w2", "b2"}, "c2",
+                ints("kernel_shape", 3, 3), ints("strides", 2, 2), ints("pads", 1, 1, 1, 1)));
+        message(graph, 1, node("relu2", "Relu", new String[]{"c2"}, "r2"));
+        message(graph, 1, node("pool", "GlobalAveragePool", new String[]{"r2"}, "p"));
+        message(graph, 1, node("flatten", "Flatten", new String[]{"p"}, "f", integer("axis", 1)));
+        message(graph, 1, node("fc", "Gemm", new String[]{"f", "w3", "b3"}, "embedding", integer("transB", 1)));
+        string(graph, 2, "synthetic_embedding");
+        message(graph, 5, tensor("w1", random, 16, 3, 3, 3));
+        message(graph, 5, tensor("b1", random, 16));
+        message(graph, 5, tensor("w2", random, 32, 16, 3, 3));
+        message(graph, 5, tensor("b2", random, 32));
+        message(graph, 5, tensor("w3", random, dimensions, 32));
+        message(graph, 5, tensor("b3", random, dimensions));
+        message(graph, 11, valueInfo("data", 1, 3, height, width));
+        message(graph, 12, valueInfo("embedding", 1, dimensions));
+
+        ByteArrayOutputStream opset = new ByteArrayOutputStream();
+        string(opset, 1, "");
+        varint(opset, 2, 11);
+
+        ByteArrayOutputStream model = new ByteArrayOutputStream();
+        varint(model, 1, 7);
+        string(model, 2, "benchmark");
+        message(model, 7, graph);
+        message(model, 8, opset);
+
+        Files.write(target, model.toByteArray());
+    }
+
+    private static ByteArrayOutputStream node(String name, String type, String[] inputs, String output,
+                                              ByteArrayOutputStream... attributes) {
+        ByteArrayOutputStream node = new ByteArrayOutputStream();
+        for (String input : inputs) {
+            string(node, 1, input);
+        }
+        string(node, 2, output);
+        string(node, 3, name);
+        string(node, 4, type);
+        for (ByteArrayOutputStream attribute : attributes) {
+            message(node, 5, attribute);
+        }
+        return node;
+    }
+
+    private static ByteArrayOutputStream ints(String name, long... values) {
+        ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+        string(attribute, 1, name);
+        for (long value : values) {
+            varint(attribute, 8, value);
+        }
+        varint(attribute, 20, ATTRIBUTE_INTS);
+        return attribute;
+    }
+
+    private static ByteArrayOutputStream integer(String name, long value) {
+        ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+        string(attribute, 1, name);
+        varint(attribute, 3, value);
+        varint(attribute, 20, ATTRIBUTE_INT);
+        return attribute;
+    }
+
+    // He initialized weights, so activations neither vanish nor explode
+    private static ByteArrayOutputStream tensor(String name, Random random, int... dims) {
+        int count = 1, fanIn = 1;
+        for (int i = 0; i < dims.length; i++) {
+            count *= dims[i];
+            fanIn *= i == 0 && dims.length > 1 ? 1 : dims[i];
+        }
+        double deviation = dims.length > 1 ? Math.sqrt(2.0 / fanIn) : 0.01;
+
+        ByteBuffer raw = ByteBuffer.allocate(count * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            raw.putFloat((float) (random.nextGaussian() * deviation));
+        }
+
+        ByteArrayOutputStream tensor = new ByteArrayOutputStream();
+        for (int dim : dims) {
+            varint(tensor, 1, dim);
+        }
+        varint(tensor, 2, FLOAT);
+        string(tensor, 8, name);
+        bytes(tensor, 9, raw.array());
+        return tensor;
+    }
+
+    private static ByteArrayOutputStream valueInfo(String name, int... dims) {
+        ByteArrayOutputStream shape = new ByteArrayOutputStream();
+        for (int dim : dims) {
+            ByteArrayOutputStream dimension = new ByteArrayOutputStream();
+            varint(dimension, 1, dim);
+            message(shape, 1, dimension);
+        }
+        ByteArrayOutputStream tensorType = new ByteArrayOutputStream();
+        varint(tensorType, 1, FLOAT);
+        message(tensorType, 2, shape);
+        ByteArrayOutputStream type = new ByteArrayOutputStream();
+        message(type, 1, tensorType);
+
+        ByteArrayOutputStream valueInfo = new ByteArrayOutputStream();
+        string(valueInfo, 1, name);
+        message(valueInfo, 2, type);
+        return valueInfo;
+    }
+
+    private static void varint(ByteArrayOutputStream out, int field, long value) {
+        rawVarint(out, (long) field << 3);
+        rawVarint(out, value);
+    }
+
+    private static void string(ByteArrayOutputStream out, int field, String value) {
+        bytes(out, field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void message(ByteArrayOutputStream out, int field, ByteArrayOutputStream message) {
+        bytes(out, field, message.toByteArray());
+    }
+
+    private static void bytes(ByteArrayOutputStream out, int field, byte[] value) {
+        rawVarint(out, (long) field << 3 | 2);
+        rawVarint(out, value.length);
+        out.writeBytes(value);
+    }
+
+    private static void rawVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
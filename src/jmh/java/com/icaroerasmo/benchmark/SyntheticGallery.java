@@ -0,0 +1,105 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.recognition.EmbeddingModelFile;
+import com.icaroerasmo.recognition.LbphHistogram;
+import com.icaroerasmo.recognition.LbphModelFile;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32SC1;
+
+// Galleries built from noise: LBPH ones trained by OpenCV or written straight to the binary layout, and embedding ones
+final class SyntheticGallery {
+
+    static final int PEOPLE = 100;
+
+    private SyntheticGallery() {
+    }
+
+    // Trains OpenCV's LBPH with default parameters on count random faces
+    static LBPHFaceRecognizer train(int count, long seed) {
+        Random random = new Random(seed);
+        MatVector faces = new MatVector(count);
+        Mat labels = new Mat(count, 1, CV_32SC1);
+        IntBuffer labelsBuf = labels.createBuffer();
+
+        for (int i = 0; i < count; i++) {
+            faces.put(i, SyntheticImages.face(SyntheticImages.FACE_SIZE, random));
+            labelsBuf.put(i, i % PEOPLE);
+        }
+
+        LBPHFaceRecognizer faceRecognizer = LBPHFaceRecognizer.create();
+        faceRecognizer.train(faces, labels);
+        for (int label = 0; label < Math.min(count, PEOPLE); label++) {
+            faceRecognizer.setLabelInfo(label, personName(label) + " ");
+        }
+
+        labels.close();
+        faces.close();
+        return faceRecognizer;
+    }
+
+    /**
+     * Writes count random histograms with OpenCV's default LBPH parameters
+     * (radius 1, 8 neighbors, 8x8 grid) without going through training,
+     * which keeps galleries of 100k entries cheap to build.
+     */
+    static void write(Path target, int count, long seed) throws IOException {
+        int dims = LbphHistogram.dimensions(8, 8, 8);
+        int[] labels = IntStream.range(0, count).map(i -> i % PEOPLE).toArray();
+        List<String> personNames = new ArrayList<>();
+        for (int label = 0; label < Math.min(count, PEOPLE); label++) {
+            personNames.add(personName(label));
+        }
+
+        Random random = new Random(seed);
+        LbphModelFile.write(target, 1, 8, 8, 8, Double.MAX_VALUE, dims, labels, personNames,
+                i -> FloatBuffer.wrap(histogram(dims, random)));
+    }
+
+    // Random unit vectors, as the embedding network would produce
+    static EmbeddingModelFile.Contents embeddings(int count, int dims, long seed) {
+        Random random = new Random(seed);
+        int[] labels = IntStream.range(0, count).map(i -> i % PEOPLE).toArray();
+        List<String> personNames = new ArrayList<>();
+        for (int label = 0; label < Math.min(count, PEOPLE); label++) {
+            personNames.add(personName(label));
+        }
+
+        float[] vectors = new float[count * dims];
+        for (int i = 0; i < count; i++) {
+            double norm = 0;
+            for (int d = 0; d < dims; d++) {
+                float value = (float) random.nextGaussian();
+                vectors[i * dims + d] = value;
+                norm += value * value;
+            }
+            for (int d = 0; d < dims; d++) {
+                vectors[i * dims + d] /= (float) Math.sqrt(norm);
+            }
+        }
+        return new EmbeddingModelFile.Contents(dims, labels, personNames, vectors);
+    }
+
+    static float[] histogram(int dims, Random random) {
+        float[] histogram = new float[dims];
+        for (int d = 0; d < dims; d++) {
+            histogram[d] = random.nextFloat();
+        }
+        return histogram;
+    }
+
+    private static String personName(int label) {
+        return "person-" + label;
+    }
+}
@@ -0,0 +1,143 @@
+package com.icaroerasmo.benchmark;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgproc.circle;
+import static org.bytedeco.opencv.global.opencv_imgproc.ellipse;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+// Deterministic inputs for the benchmarks, optionally sampled from a local video file
+final class SyntheticImages {
+
+    // Default recognition.face size
+    static final Size FACE_SIZE = new Size(100, 100);
+
+    private SyntheticImages() {
+    }
+
+    // Parses "1280x720"
+    static Size size(String resolution) {
+        String[] parts = resolution.split("x");
+        return new Size(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    // BGR noise with a few filled ellipses, so frames are neither blank nor trivially compressible
+    static Mat frame(Size size, long seed) {
+        Random random = new Random(seed);
+        Mat frame = noise(size.height(), size.width(), CV_8UC3, random);
+        for (int i = 0; i < 4; i++) {
+            Point center = new Point(random.nextInt(size.width()), random.nextInt(size.height()));
+            Size axes = new Size(size.width() / 16 + 1, size.height() / 10 + 1);
+            ellipse(frame, center, axes, 0, 0, 360, new Scalar(120, 150, 200, 0), -1, 8, 0);
+        }
+        return frame;
+    }
+
+    /**
+     * Background frame with count faces of sizes between minFace and maxFace
+     * pixels pasted at random places without overlapping. Faces are taken
+     * from sources in turn, or drawn when sources is empty. The box of every
+     * face is added to truth.
+     */
+    static Mat crowd(Size size, int count, int minFace, int maxFace, List<Mat> sources, long seed, List<Rect> truth) {
+        Random random = new Random(seed);
+        Mat frame = frame(size, seed);
+        int placed = 0;
+        for (int attempt = 0; placed < count && attempt < count * 50; attempt++) {
+            // log-uniform, as many small faces as large ones
+            int side = (int) Math.round(minFace * Math.pow((double) maxFace / minFace, random.nextDouble()));
+            side = Math.min(side, Math.min(size.width(), size.height()));
+            Rect box = new Rect(random.nextInt(size.width() - side + 1), random.nextInt(size.height() - side + 1),
+                    side, side);
+            if (truth.stream().anyMatch(other -> intersects(other, box))) {
+                continue;
+            }
+            try (Mat roi = new Mat(frame, box)) {
+                if (sources.isEmpty()) {
+                    drawFace(roi, random);
+                } else {
+                    resize(sources.get(placed % sources.size()), roi, new Size(side, side));
+                }
+            }
+            truth.add(box);
+            placed++;
+        }
+        return frame;
+    }
+
+    // Skin toned oval with eyes, nose and mouth filling the image
+    private static void drawFace(Mat image, Random random) {
+        int side = image.cols();
+        image.put(new Scalar(60 + random.nextInt(60), 90 + random.nextInt(60), 110 + random.nextInt(60), 0));
+        Scalar skin = new Scalar(120 + random.nextInt(40), 160 + random.nextInt(40), 200 + random.nextInt(40), 0);
+        Scalar dark = new Scalar(40, 40, 50, 0);
+        ellipse(image, new Point(side / 2, side / 2), new Size(side * 3 / 8, side / 2), 0, 0, 360, skin, -1, 8, 0);
+        circle(image, new Point(side * 3 / 8, side * 5 / 12), Math.max(1, side / 16), dark, -1, 8, 0);
+        circle(image, new Point(side * 5 / 8, side * 5 / 12), Math.max(1, side / 16), dark, -1, 8, 0);
+        ellipse(image, new Point(side / 2, side * 7 / 12), new Size(Math.max(1, side / 24), Math.max(1, side / 12)),
+                0, 0, 360, new Scalar(100, 130, 180, 0), -1, 8, 0);
+        ellipse(image, new Point(side / 2, side * 3 / 4), new Size(Math.max(1, side / 6), Math.max(1, side / 24)),
+                0, 0, 360, new Scalar(60, 60, 150, 0), -1, 8, 0);
+    }
+
+    private static boolean intersects(Rect a, Rect b) {
+        return a.x() < b.x() + b.width() && b.x() < a.x() + a.width()
+                && a.y() < b.y() + b.height() && b.y() < a.y() + a.height();
+    }
+
+    // Grayscale face sized crop filled with noise
+    static Mat face(Size size, Random random) {
+        return noise(size.height(), size.width(), CV_8UC1, random);
+    }
+
+    /**
+     * Returns count frames of the given size, taken from the video file when
+     * one is given and generated otherwise.
+     */
+    static List<Mat> frames(String video, Size size, int count) throws Exception {
+        List<Mat> frames = new ArrayList<>(count);
+        if (video == null || video.isBlank()) {
+            for (int i = 0; i < count; i++) {
+                frames.add(frame(size, i));
+            }
+            return frames;
+        }
+
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(video);
+             OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat()) {
+            grabber.start();
+            Frame frame;
+            while (frames.size() < count && (frame = grabber.grabImage()) != null) {
+                Mat scaled = new Mat();
+                resize(converter.convert(frame), scaled, size);
+                frames.add(scaled);
+            }
+            grabber.stop();
+        }
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("No frames could be read from " + video);
+        }
+        return frames;
+    }
+
+    private static Mat noise(int rows, int cols, int type, Random random) {
+        Mat mat = new Mat(rows, cols, type);
+        byte[] pixels = new byte[(int) (mat.total() * mat.channels())];
+        random.nextBytes(pixels);
+        mat.data().put(pixels);
+        return mat;
+    }
+}
@@ -0,0 +1,186 @@
+package com.icaroerasmo.benchmark;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.MetricsProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.service.DeepLearningFaceDetectionService;
+import com.icaroerasmo.service.DetectionMode;
+import com.icaroerasmo.service.DetectionTiles;
+import com.icaroerasmo.service.FaceDetectionNetPool;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+
+/**
+ * Latency against recall of single shot and tiled detection on frames with
+ * faces of many sizes. detect() is the time per frame, recall() the share
+ * of faces found (recallPercent), the boxes matching no face
+ * (falsePositives) over all the frames and the detector passes each frame
+ * takes (tilesPerFrame).
+ * <p>
+ * Faces are drawn unless {@code -p faces=<directory>} points at face crops,
+ * e.g. the training dataset; drawn faces only give a rough idea of recall.
+ * The face sizes are given for a 3840 pixel wide frame and scaled with the
+ * resolution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class TiledDetectionBenchmark {
+
+    private static final int FRAMES = 8;
+    // Detections overlapping a face at least this much find it
+    private static final double MATCH_IOU = 0.3;
+
+    @Param({"1920x1080", "3840x2160"})
+    private String resolution;
+
+    @Param({"SINGLE_SHOT", "TILED"})
+    private DetectionMode mode;
+
+    @Param({"600"})
+    private int tileSize;
+
+    @Param({"0.25"})
+    private double overlap;
+
+    @Param({"true"})
+    private boolean fullFrame;
+
+    @Param({"12"})
+    private int facesPerFrame;
+
+    @Param({"24"})
+    private int minFace;
+
+    @Param({"320"})
+    private int maxFace;
+
+    @Param({""})
+    private String faces;
+
+    private FaceDetectionNetPool netPool;
+    private DeepLearningFaceDetectionService detectionService;
+    private DetectionProperties.Tiling tiling;
+    private final List<Mat> frames = new ArrayList<>();
+    private final List<List<Rect>> truth = new ArrayList<>();
+    private int tilesPerFrame;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        DetectionProperties properties = new DetectionProperties();
+        properties.setPoolSize(1);
+        netPool = new FaceDetectionNetPool(properties, new NativeMemoryTracker(new MemoryProperties()));
+        detectionService = new DeepLearningFaceDetectionService(netPool, new MetricsRegistry(new MetricsProperties()));
+
+        tiling = properties.getTiling();
+        tiling.setMode(mode);
+        tiling.setTileSize(tileSize);
+        tiling.setOverlap(overlap);
+        tiling.setFullFrame(fullFrame);
+
+        List<Mat> sources = readFaces();
+        var size = SyntheticImages.size(resolution);
+        double scale = size.width() / 3840.0;
+        for (int i = 0; i < FRAMES; i++) {
+            List<Rect> boxes = new ArrayList<>();
+            frames.add(SyntheticImages.crowd(size, facesPerFrame, Math.max(8, (int) (minFace * scale)),
+                    Math.max(8, (int) (maxFace * scale)), sources, i, boxes));
+            truth.add(boxes);
+        }
+        sources.forEach(Mat::close);
+
+        tilesPerFrame = mode == DetectionMode.TILED
+                ? DetectionTiles.layout(size.width(), size.height(), tiling).size() : 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        frames.forEach(Mat::close);
+        netPool.close();
+    }
+
+    @Benchmark
+    public List<Rect> detect() {
+        return detectionService.detect(frames.get(next++ % frames.size()), tiling);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Recall {
+        public long recallPercent;
+        public long falsePositives;
+        public long tilesPerFrame;
+    }
+
+    // Every frame once; measured once since JMH sums event counters over iterations
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public void recall(Recall recall) {
+        int expected = 0, found = 0, falsePositives = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            List<Rect> detections = new ArrayList<>(detectionService.detect(frames.get(i), tiling));
+            for (Rect face : truth.get(i)) {
+                expected++;
+                Rect match = detections.stream().filter(detection -> iou(face, detection) >= MATCH_IOU)
+                        .findFirst().orElse(null);
+                if (match != null) {
+                    detections.remove(match);
+                    found++;
+                }
+            }
+            falsePositives += detections.size();
+        }
+        recall.recallPercent = expected == 0 ? 0 : Math.round(100.0 * found / expected);
+        recall.falsePositives = falsePositives;
+        recall.tilesPerFrame = tilesPerFrame;
+    }
+
+    private List<Mat> readFaces() throws Exception {
+        List<Mat> sources = new ArrayList<>();
+        if (faces == null || faces.isBlank()) {
+            return sources;
+        }
+        try (Stream<Path> files = Files.walk(Path.of(faces))) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                Mat image = imread(file.toString());
+                if (image.empty()) {
+                    image.close();
+                } else {
+                    sources.add(image);
+                }
+            }
+        }
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No face images could be read from " + faces);
+        }
+        return sources;
+    }
+
+    private static double iou(Rect a, Rect b) {
+        int width = Math.min(a.x() + a.width(), b.x() + b.width()) - Math.max(a.x(), b.x());
+        int height = Math.min(a.y() + a.height(), b.y() + b.height()) - Math.max(a.y(), b.y());
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        double intersection = (double) width * height;
+        return intersection / ((double) a.width() * a.height() + (double) b.width() * b.height() - intersection);
+    }
+}
@@ -1 +1,79 @@
-package com.icaroerasmo;import java.nio.file.Path;import java.nio.file.Paths;import java.util.*;import com.icaroerasmo.model.FaceRecognition;import com.icaroerasmo.service.DetectionService;import com.icaroerasmo.service.FaceRecognitionService;import com.icaroerasmo.service.RtspFrameExtractorService;import com.icaroerasmo.utils.MatUtil;import lombok.SneakyThrows;import lombok.extern.log4j.Log4j2;import org.bytedeco.opencv.opencv_face.*;import org.springframework.beans.factory.annotation.Autowired;import org.springframework.boot.CommandLineRunner;import org.springframework.boot.SpringApplication;import org.springframework.boot.autoconfigure.SpringBootApplication;import org.springframework.scheduling.annotation.EnableScheduling;import java.util.concurrent.atomic.AtomicInteger;import static org.bytedeco.opencv.global.opencv_imgcodecs.imwrite;@Log4j2@EnableScheduling@SpringBootApplicationpublic class JavaRtspFaceRecognition implements CommandLineRunner {    private static AtomicInteger count = new AtomicInteger(0);    @Autowired    private FaceRecognitionService faceRecognitionService;    @Autowired    private RtspFrameExtractorService rtspFrameExtractorService;    @Autowired    private DetectionService detectionService;    @Autowired    private MatUtil matUtil;    private static final Path DATASET = Paths.get("trained_dataset.xml");    public static void main(String[] args) {        SpringApplication.run(JavaRtspFaceRecognition.class, args);    }    @Override    @SneakyThrows    public void run(String... args) {        FaceRecognizer faceRecognizer;        if(DATASET.toFile().exists()) {            faceRecognizer = faceRecognitionService.load();        } else {            faceRecognizer = faceRecognitionService.train(args[0]);        }//        FaceRecognition testImage = faceRecognitionService.test(faceRecognizer, args[1]);////        imwrite("test.jpg",  testImage.getDetectionImg());////        testImage.getFaces().//                forEach(output -> {//                    final String label = output.getPersonName();//                    final Double confidence = output.getConfidence();//                    System.out.println("Predicted label: " + label.substring(0, label.length()-1) + " confidence: "+ confidence);//                });        rtspFrameExtractorService.extract("rtsp://localhost:8554/backyard?video&audio", (img) -> {            FaceRecognition faceRecognition = null;            try {                faceRecognition = faceRecognitionService.test(faceRecognizer, img);                if (faceRecognition.getFaces().isEmpty() || faceRecognition.getFaces() == null) {                    log.debug("No faces detected in the image.");                    return;                }                faceRecognition.getFaces().forEach(output -> {                    String label = output.getPersonName();                    Double confidence = output.getConfidence();                    if (label != null && output.getFaceRect() != null) {                        matUtil.drawRectangleAndName(img, label, output.getFaceRect());                        if (detectionService.shouldAnnounceDetection(label, confidence)) {                            String filename = String.format("%s_%d.jpg",                                    label, count.getAndIncrement());                            imwrite(filename, img);                            log.info("Pessoa detectada: {} (confiança: {})",                                    label, confidence);                        }                    }                });            } catch (Exception e) {                log.error("Error processing frame", e);            } finally {                matUtil.releaseResources(img, faceRecognition.getDetectionImg());            }        });        faceRecognizer.close();    }}
\ No newline at end of file
+package com.icaroerasmo;
+
+import com.icaroerasmo.pipeline.PipelineEngine;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.scan.VideoScanner;
+import com.icaroerasmo.service.FaceRecognitionService;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Log4j2
+@EnableScheduling
+@SpringBootApplication
+@ConfigurationPropertiesScan
+public class JavaRtspFaceRecognition implements CommandLineRunner {
+
+    @Autowired
+    private FaceRecognitionService faceRecognitionService;
+
+    @Autowired
+    private PipelineEngine pipelineEngine;
+
+    @Autowired
+    private VideoScanner videoScanner;
+
+    public static void main(String[] args) {
+        SpringApplication.run(JavaRtspFaceRecognition.class, args);
+    }
+
+    @Override
+    @SneakyThrows
+    public void run(String... args) {
+
+        FaceRecognitionModel model;
+
+        if(faceRecognitionService.isTrained()) {
+            model = faceRecognitionService.load();
+            if (args.length > 0) {
+                model = faceRecognitionService.enroll(model, args[0]);
+            }
+        } else {
+            model = faceRecognitionService.train(args[0]);
+        }
+
+//        FaceRecognition testImage = faceRecognitionService.test(model, args[1]);
+//
+//        imwrite("test.jpg",  testImage.getDetectionImg());
+//
+//        testImage.getFaces().
+//                forEach(output -> {
+//                    final String label = output.getPersonName();
+//                    final Double confidence = output.getConfidence();
+//                    System.out.println("Predicted label: " + label.substring(0, label.length()-1) + " confidence: "+ confidence);
+//                });
+
+        // Recorded footage is scanned instead of watching the cameras when scan.inputs is set
+        if (videoScanner.isEnabled()) {
+            try {
+                videoScanner.scan(model);
+            } finally {
+                model.close();
+            }
+            return;
+        }
+
+        try {
+            pipelineEngine.start(model);
+            pipelineEngine.awaitTermination();
+        } finally {
+            pipelineEngine.stop();
+            model.close();
+        }
+    }
+}
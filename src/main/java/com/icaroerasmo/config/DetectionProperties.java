@@ -0,0 +1,58 @@
+package com.icaroerasmo.config;
+
+import com.icaroerasmo.service.DetectionMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "detection")
+public class DetectionProperties {
+
+    // Number of Net instances (one per concurrent inference), defaults to the core count
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+
+    // OpenCV worker threads per inference call; a negative value keeps OpenCV's default
+    private int opencvThreads = 1;
+
+    private Batch batch = new Batch();
+    private Tiling tiling = new Tiling();
+
+    @Data
+    public static class Batch {
+        // Groups frames from every camera into a single forward pass
+        private boolean enabled = false;
+        private int maxSize = 8;
+        private long maxWaitMillis = 10;
+        private int workers = 1;
+        private int queueCapacity = 64;
+    }
+
+    @Data
+    public static class Tiling {
+        private DetectionMode mode = DetectionMode.SINGLE_SHOT;
+        // Side of a tile in frame pixels, every tile is scaled to the model input
+        private int tileSize = 600;
+        // Fraction of a tile shared with its neighbours, faces up to that size always fit whole in a tile
+        private double overlap = 0.25;
+        // Also runs the whole frame, for faces too large for the overlap
+        private boolean fullFrame = true;
+        // Tiles per forward pass
+        private int batchSize = 8;
+        // Boxes of the same face overlapping more than this are merged
+        private float nmsThreshold = 0.3f;
+        // Parts of the frame to tile, empty tiles the whole frame
+        private List<Region> regions = new ArrayList<>();
+    }
+
+    // Fractions of the frame width and height, so regions do not depend on the stream resolution
+    @Data
+    public static class Region {
+        private double x;
+        private double y;
+        private double width = 1;
+        private double height = 1;
+    }
+}
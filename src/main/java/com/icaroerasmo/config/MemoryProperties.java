@@ -0,0 +1,18 @@
+package com.icaroerasmo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "memory")
+public class MemoryProperties {
+
+    // Accounts every Mat allocated through MatUtil.track; costs a map entry per frame, so meant for soak tests
+    private boolean tracking = false;
+
+    // Keeps the allocation stack trace of every tracked Mat and logs the ones still alive after leakAgeSeconds
+    private boolean debug = false;
+    private long leakAgeSeconds = 30;
+
+    private long reportMillis = 60000;
+}
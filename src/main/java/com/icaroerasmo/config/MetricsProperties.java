@@ -0,0 +1,19 @@
+package com.icaroerasmo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "metrics")
+public class MetricsProperties {
+
+    // Serves the metrics in the Prometheus text format on http://address:port/metrics
+    private boolean enabled = true;
+    // Loopback only by default, use 0.0.0.0 to let a remote Prometheus scrape it
+    private String address = "127.0.0.1";
+    private int port = 9464;
+
+    // Logs the stage latency percentiles of the last interval every reportMillis
+    private boolean report = true;
+    private long reportMillis = 60000;
+}
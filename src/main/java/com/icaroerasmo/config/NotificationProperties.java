@@ -0,0 +1,45 @@
+package com.icaroerasmo.config;
+
+import com.icaroerasmo.notification.ClipFormat;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "notification")
+public class NotificationProperties {
+
+    private boolean enabled = false;
+    private Telegram telegram = new Telegram();
+    private Clip clip = new Clip();
+
+    // Announcements of the same person on the same camera within this window go out as a single message
+    private long cooldownSeconds = 60;
+
+    // Clips are encoded off the recognition path, on this many threads behind a bounded queue
+    private int encoderThreads = 1;
+    private int encoderQueueCapacity = 16;
+
+    // Outbound messages are spaced to stay under this rate, failed ones are retried with exponential backoff
+    private int messagesPerMinute = 20;
+    private int maxAttempts = 5;
+    private long retryBackoffMillis = 2000;
+    private int retryQueueCapacity = 100;
+
+    @Data
+    public static class Telegram {
+        private String botToken;
+        private String chatId;
+        // Points the client at another server, e.g. a local stand-in for tests
+        private String apiUrl = "https://api.telegram.org/bot";
+    }
+
+    @Data
+    public static class Clip {
+        private ClipFormat format = ClipFormat.GIF;
+        // Frames are downscaled to this width as they are buffered
+        private int width = 320;
+        private double fps = 4;
+        private long preEventSeconds = 3;
+        private long postEventSeconds = 2;
+    }
+}
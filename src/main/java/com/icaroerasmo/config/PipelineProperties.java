@@ -0,0 +1,114 @@
+package com.icaroerasmo.config;
+
+import com.icaroerasmo.pipeline.BackpressurePolicy;
+import com.icaroerasmo.pipeline.DecodeSkip;
+import com.icaroerasmo.pipeline.GatingStrategy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "pipeline")
+public class PipelineProperties {
+
+    private List<Camera> cameras = new ArrayList<>();
+    private Grabber grabber = new Grabber();
+    private Supervisor supervisor = new Supervisor();
+    private Stage detect = new Stage();
+    private Stage recognize = new Stage();
+    private Stage announce = new Stage();
+    private Gating gating = new Gating();
+    private Tracking tracking = new Tracking();
+    private Announcement announcement = new Announcement();
+
+    @Data
+    public static class Camera {
+        private String name;
+        // RTSP URL, or any other input FFmpeg can open such as a local video file
+        private String url;
+        // Overrides pipeline.grabber for this camera when set
+        private Grabber grabber;
+        // Overrides pipeline.gating for this camera when set
+        private Gating gating;
+        // Overrides pipeline.announcement for this camera when set
+        private Announcement announcement;
+        // Overrides detection.tiling for this camera when set
+        private DetectionProperties.Tiling tiling;
+    }
+
+    @Data
+    public static class Grabber {
+        // Frames are scaled by the decoder to this size, 0 keeps the stream's own size
+        private int width = 0;
+        private int height = 0;
+        private DecodeSkip skip = DecodeSkip.NONE;
+        // FFmpeg pixel format name, only bgr24 is accepted since detection expects 3 channel BGR
+        private String pixelFormat = "bgr24";
+        // tcp or udp, only applied to rtsp:// inputs
+        private String rtspTransport = "tcp";
+        // Bytes and microseconds FFmpeg may spend probing the input, 0 keeps FFmpeg's default
+        private long probeSize = 0;
+        private long analyzeDuration = 0;
+        // Socket reads give up after this long, so a dead camera cannot block its grabber forever
+        private long timeoutMillis = 10000;
+        // Passed to FFmpeg as they are, e.g. buffer_size for UDP
+        private Map<String, String> options = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Supervisor {
+        // Reconnects when no frame arrived for this long
+        private long stallTimeoutSeconds = 15;
+        private long initialBackoffMillis = 500;
+        private long maxBackoffMillis = 30000;
+        // Whether a stream that ended (e.g. a local file) is opened again
+        private boolean reconnect = true;
+    }
+
+    @Data
+    public static class Stage {
+        private int queueCapacity = 4;
+        private int workers = 1;
+        private BackpressurePolicy backpressure = BackpressurePolicy.DROP_OLDEST;
+    }
+
+    @Data
+    public static class Gating {
+        private GatingStrategy strategy = GatingStrategy.NONE;
+        private int everyNth = 5;
+        private double targetFps = 5;
+        // Width of the grayscale frame used for motion detection
+        private int motionWidth = 160;
+        // Per pixel intensity difference that counts as change
+        private int motionPixelThreshold = 25;
+        // Fraction of changed pixels that triggers detection
+        private double motionAreaRatio = 0.01;
+        // Every frame goes to detection for this long after a face is found
+        private long fullRateAfterFaceSeconds = 5;
+    }
+
+    @Data
+    public static class Tracking {
+        // Requires a single recognize worker, the tracker needs frames in order
+        private boolean enabled = true;
+        // Minimum overlap between a predicted track box and a detection to be the same face
+        private double matchIou = 0.3;
+        // Recognition runs again when the box overlaps less than this with the box last recognized
+        private double reverifyIou = 0.5;
+        private long reverifySeconds = 5;
+        // Decoded frames a track survives without a matching detection, frames skipped by the gate included
+        private int maxMissedFrames = 10;
+    }
+
+    @Data
+    public static class Announcement {
+        // A person is announced again once seen fewer than minDetections times in this window
+        private long windowSeconds = 3;
+        private int minDetections = 5;
+        private long evaluationMillis = 1000;
+    }
+}
@@ -0,0 +1,59 @@
+package com.icaroerasmo.config;
+
+import com.icaroerasmo.recognition.RecognitionBackend;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "recognition")
+public class RecognitionProperties {
+
+    // LBPH histograms or DNN embeddings, each backend keeps its own model and manifest
+    private RecognitionBackend backend = RecognitionBackend.LBPH;
+
+    // Threads scanning gallery partitions in parallel, defaults to the core count
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+
+    // Galleries are only split when every partition gets at least this many histograms
+    private int minHistogramsPerTask = 2048;
+
+    // Uses the Java Vector API when the jdk.incubator.vector module is available
+    private boolean vectorized = true;
+
+    private Face face = new Face();
+    private Embedding embedding = new Embedding();
+
+    // Shape of the crops fed to the recognizer, a model must be retrained after changing it
+    @Data
+    public static class Face {
+        private int width = 100;
+        private int height = 100;
+        // Margin added around the detected box on every side, as a fraction of its size
+        private double padding = 0.0;
+        private boolean equalize = false;
+    }
+
+    /**
+     * Face embedding network run through OpenCV dnn, any format readNet
+     * understands (ONNX, Caffe, Torch...). No network ships with the
+     * application; the defaults match OpenCV zoo's SFace,
+     * https://github.com/opencv/opencv_zoo/tree/main/models/face_recognition_sface,
+     * downloaded to the model path. The pool fails to start when it is missing.
+     */
+    @Data
+    public static class Embedding {
+        private String model = "opencv/face_recognition_sface_2021dec.onnx";
+        // Only needed by formats that keep the graph apart from the weights, e.g. a Caffe prototxt
+        private String config = "";
+        // Embedding networks take colour crops at their own input size instead of recognition.face
+        private int inputWidth = 112;
+        private int inputHeight = 112;
+        private double scale = 1.0;
+        private double mean = 0;
+        private boolean swapRb = true;
+        // Networks in the pool, one inference at a time each; defaults to the core count
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+        // Cosine distance (1 - cosine similarity) above which a face is unknown
+        private double threshold = 0.4;
+    }
+}
@@ -0,0 +1,35 @@
+package com.icaroerasmo.config;
+
+import com.icaroerasmo.scan.ScanFormat;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "scan")
+public class ScanProperties {
+
+    // Video files or directories to scan instead of starting the live pipeline
+    private List<String> inputs = new ArrayList<>();
+    // Files picked up when walking directories
+    private List<String> extensions = new ArrayList<>(List.of("mp4", "mkv", "avi", "mov", "ts", "m4v", "webm"));
+
+    // Segments decoded at once, each one by its own grabber
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private long segmentSeconds = 120;
+
+    // Frames per second of video run through detection and recognition, 0 keeps every decoded frame
+    private double sampleFps = 2;
+
+    // Appended to, never rewritten; the format comes from the extension, .csv or .jsonl
+    private String output = "scan_index.jsonl";
+    private boolean includeUnknown = false;
+
+    private long reportMillis = 5000;
+
+    private PipelineProperties.Grabber grabber = new PipelineProperties.Grabber();
+    // Overrides detection.tiling for the scan when set
+    private DetectionProperties.Tiling tiling;
+}
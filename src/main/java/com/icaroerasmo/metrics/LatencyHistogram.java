@@ -0,0 +1,119 @@
+package com.icaroerasmo.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram in the spirit of HdrHistogram. Durations up
+ * to 128ns have a bucket each, above that every power of two is split into
+ * 64 buckets, so any recorded value is known within 1.6% up to about 18
+ * minutes with a fixed 18KB of counters. Recording is a couple of atomic
+ * increments and never allocates.
+ * <p>
+ * Counts are cumulative since startup; {@link #snapshot()} copies them so
+ * callers can diff two snapshots to look at an interval.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Larger durations are recorded as this one
+    private static final long MAX_NANOS = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.clamp(nanos, 0, MAX_NANOS);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // Records the time elapsed since startedAt, a System.nanoTime() value
+    public void recordSince(long startedAt) {
+        record(System.nanoTime() - startedAt);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sum.sum(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    // Largest value recorded into the bucket
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Copy of the counters at one point in time. The buckets are read one by
+     * one while other threads keep recording, so count may be slightly off
+     * from the sum of the buckets.
+     */
+    public record Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+
+        // Recordings made after the given earlier snapshot, max stays the all time one
+        public Snapshot since(Snapshot earlier) {
+            long[] delta = counts.clone();
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] -= earlier.counts[i];
+            }
+            return new Snapshot(delta, count - earlier.count, sumNanos - earlier.sumNanos, maxNanos);
+        }
+
+        // Value below which the given fraction of the recordings fall, in nanoseconds
+        public long percentile(double fraction) {
+            long total = 0;
+            for (long bucket : counts) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        // Recordings of at most the given duration, bucket precision
+        public long countAtOrBelow(long nanos) {
+            long below = 0;
+            for (int i = 0; i < counts.length && highestValue(i) <= nanos; i++) {
+                below += counts[i];
+            }
+            return below;
+        }
+
+        public double meanMillis() {
+            return count == 0 ? 0 : sumNanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.icaroerasmo.metrics;
+
+import com.icaroerasmo.config.MetricsProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves every {@link MetricsSource} on /metrics in the Prometheus text
+ * format. The application has no web stack, so this is the JDK's own HTTP
+ * server with a single thread; sources are only read when scraped.
+ * <p>
+ * Metrics are optional, so a port that cannot be bound only logs a warning
+ * instead of stopping the application.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class MetricsEndpoint {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsProperties properties;
+    private final List<MetricsSource> sources;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(properties.getAddress(), properties.getPort()), 0);
+        } catch (IOException e) {
+            log.warn("Metrics disabled, could not listen on {}:{}", properties.getAddress(), properties.getPort(), e);
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/metrics", this::scrape);
+        server.setExecutor(executor);
+        server.start();
+        log.info("Serving metrics on http://{}:{}/metrics", properties.getAddress(), server.getAddress().getPort());
+    }
+
+    public String scrape() {
+        MetricsWriter writer = new MetricsWriter();
+        for (MetricsSource source : sources) {
+            try {
+                source.collect(writer);
+            } catch (RuntimeException e) {
+                log.warn("Could not collect metrics from {}", source.getClass().getSimpleName(), e);
+            }
+        }
+        return writer.render();
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.icaroerasmo.metrics;
+
+import com.icaroerasmo.config.MetricsProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stage latencies and event counters of the pipeline, per camera. Lookups
+ * only go through maps keyed by the camera name, so recording from the hot
+ * path does not allocate once a camera has been seen. Work not tied to a
+ * camera, such as detection inference, uses {@link #NO_CAMERA}.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class MetricsRegistry implements MetricsSource {
+
+    public static final String NO_CAMERA = "";
+
+    // Bucket bounds of the exported histograms, in seconds
+    private static final double[] BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final MetricsProperties properties;
+    private final Map<TimedStage, Map<String, LatencyHistogram>> histograms = new EnumMap<>(TimedStage.class);
+    private final Map<PipelineCounter, Map<String, LongAdder>> counters = new EnumMap<>(PipelineCounter.class);
+    // Snapshots taken by the previous report, to log the last interval only
+    private final Map<LatencyHistogram, LatencyHistogram.Snapshot> reported = new HashMap<>();
+
+    {
+        for (TimedStage stage : TimedStage.values()) {
+            histograms.put(stage, new ConcurrentHashMap<>());
+        }
+        for (PipelineCounter counter : PipelineCounter.values()) {
+            counters.put(counter, new ConcurrentHashMap<>());
+        }
+    }
+
+    public LatencyHistogram histogram(TimedStage stage, String camera) {
+        Map<String, LatencyHistogram> cameras = histograms.get(stage);
+        String key = camera == null ? NO_CAMERA : camera;
+        LatencyHistogram histogram = cameras.get(key);
+        return histogram != null ? histogram : cameras.computeIfAbsent(key, c -> new LatencyHistogram());
+    }
+
+    // Records the time elapsed since startedAt, a System.nanoTime() value
+    public void record(TimedStage stage, String camera, long startedAt) {
+        histogram(stage, camera).recordSince(startedAt);
+    }
+
+    public void increment(PipelineCounter counter, String camera) {
+        Map<String, LongAdder> cameras = counters.get(counter);
+        String key = camera == null ? NO_CAMERA : camera;
+        LongAdder adder = cameras.get(key);
+        (adder != null ? adder : cameras.computeIfAbsent(key, c -> new LongAdder())).increment();
+    }
+
+    public long count(PipelineCounter counter, String camera) {
+        LongAdder adder = counters.get(counter).get(camera == null ? NO_CAMERA : camera);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        histograms.forEach((stage, cameras) -> cameras.forEach((camera, histogram) ->
+                writer.histogram("stage_latency_seconds", "Latency of a pipeline stage",
+                        histogram.snapshot(), BUCKETS, "stage", name(stage), "camera", camera)));
+        counters.forEach((counter, cameras) -> cameras.forEach((camera, adder) ->
+                writer.counter(name(counter), counter.getHelp(), adder.sum(), "camera", camera)));
+    }
+
+    @Scheduled(fixedDelayString = "${metrics.report-millis:60000}")
+    private synchronized void report() {
+        if (!properties.isReport()) {
+            return;
+        }
+        histograms.forEach((stage, cameras) -> cameras.forEach((camera, histogram) -> {
+            LatencyHistogram.Snapshot now = histogram.snapshot();
+            LatencyHistogram.Snapshot previous = reported.put(histogram, now);
+            LatencyHistogram.Snapshot interval = previous == null ? now : now.since(previous);
+            if (interval.count() == 0) {
+                return;
+            }
+            log.info("Latency {}{}: {} calls, mean {}ms, p50 {}ms, p99 {}ms, p99.9 {}ms, max {}ms", stage,
+                    camera.isEmpty() ? "" : " " + camera, interval.count(),
+                    String.format("%.2f", interval.meanMillis()), millis(interval.percentile(0.5)),
+                    millis(interval.percentile(0.99)), millis(interval.percentile(0.999)),
+                    millis(interval.percentile(1)));
+        }));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    static String name(Enum<?> value) {
+        return value.name().toLowerCase();
+    }
+}
@@ -0,0 +1,7 @@
+package com.icaroerasmo.metrics;
+
+// Component exposing its own counters, read whenever the metrics are scraped
+public interface MetricsSource {
+
+    void collect(MetricsWriter writer);
+}
@@ -0,0 +1,85 @@
+package com.icaroerasmo.metrics;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects samples in the Prometheus text exposition format. Samples of the
+ * same metric may come from several sources and are grouped under a single
+ * HELP and TYPE header. Labels are given as name, value pairs.
+ */
+public class MetricsWriter {
+
+    private static final String PREFIX = "face_recognition_";
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public void counter(String name, String help, double value, String... labels) {
+        sample(name, "counter", help, name + "_total", value, labels);
+    }
+
+    public void gauge(String name, String help, double value, String... labels) {
+        sample(name, "gauge", help, name, value, labels);
+    }
+
+    // Cumulative buckets of the histogram at the given bounds, in seconds
+    public void histogram(String name, String help, LatencyHistogram.Snapshot snapshot,
+                          double[] boundsSeconds, String... labels) {
+        for (double bound : boundsSeconds) {
+            sample(name, "histogram", help, name + "_bucket",
+                    snapshot.countAtOrBelow((long) (bound * 1e9)), with(labels, "le", BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString()));
+        }
+        sample(name, "histogram", help, name + "_bucket", snapshot.count(), with(labels, "le", "+Inf"));
+        sample(name, "histogram", help, name + "_sum", snapshot.sumNanos() / 1e9, labels);
+        sample(name, "histogram", help, name + "_count", snapshot.count(), labels);
+    }
+
+    public String render() {
+        StringBuilder text = new StringBuilder();
+        families.forEach((name, family) -> {
+            text.append("# HELP ").append(PREFIX).append(name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(PREFIX).append(name).append(' ').append(family.type).append('\n');
+            text.append(family.samples);
+        });
+        return text.toString();
+    }
+
+    private void sample(String name, String type, String help, String sample, double value, String... labels) {
+        StringBuilder samples = families.computeIfAbsent(name, n -> new Family(type, help)).samples;
+        samples.append(PREFIX).append(sample);
+        if (labels.length > 0) {
+            samples.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) {
+                    samples.append(',');
+                }
+                samples.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            samples.append('}');
+        }
+        samples.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String[] with(String[] labels, String name, String value) {
+        String[] all = new String[labels.length + 2];
+        System.arraycopy(labels, 0, all, 0, labels.length);
+        all[labels.length] = name;
+        all[labels.length + 1] = value;
+        return all;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private record Family(String type, String help, StringBuilder samples) {
+        Family(String type, String help) {
+            this(type, help, new StringBuilder());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.icaroerasmo.metrics;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Events counted per camera
+@Getter
+@RequiredArgsConstructor
+public enum PipelineCounter {
+    FACES("Faces recognized, known or not"),
+    UNKNOWN_FACES("Faces not matching anyone in the gallery"),
+    ANNOUNCEMENTS("Recognitions the announcement rules let through");
+
+    private final String help;
+}
@@ -0,0 +1,19 @@
+package com.icaroerasmo.metrics;
+
+// Steps of the pipeline with a latency histogram, per camera unless noted
+public enum TimedStage {
+    // Reading and decoding the next frame from the stream
+    GRAB,
+    // Wrapping the decoded frame into a Mat
+    CONVERT,
+    // Detect stage of a camera, batching and tiling included
+    DETECT,
+    // One forward pass of the detection network, shared by every camera
+    INFERENCE,
+    // Cropping and scaling one face for the recognizer
+    NORMALIZE,
+    // Recognizing one normalized face
+    PREDICT,
+    // Announce stage of a camera, drawing and notifying included
+    ANNOUNCE
+}
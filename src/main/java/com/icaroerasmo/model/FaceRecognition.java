@@ -16,8 +16,12 @@ public class FaceRecognition {
     @Data
     @AllArgsConstructor
     public static class DetectedFaces {
+        public static final long UNTRACKED = -1;
+
         private String personName;
         private Double confidence;
         private Rect faceRect;
+        // Stable id of the face across frames of the same camera, UNTRACKED when tracking is off
+        private long trackId;
     }
 }
@@ -0,0 +1,28 @@
+package com.icaroerasmo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Data
+public class GalleryManifest {
+    public static final int NO_FACE = -1;
+
+    // Person names indexed by the label id used in the trained model
+    private final List<String> labels = new ArrayList<>();
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+        private String hash;
+        private long lastModified;
+        // Label the image was trained with, NO_FACE when no face was found on it
+        private int label;
+    }
+}
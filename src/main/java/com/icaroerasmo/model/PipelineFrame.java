@@ -0,0 +1,20 @@
+package com.icaroerasmo.model;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@RequiredArgsConstructor
+public class PipelineFrame {
+    private final String camera;
+    private final long sequence;
+    private final Instant timestamp;
+    private final Mat image;
+    private List<Rect> faces;
+    private FaceRecognition recognition;
+}
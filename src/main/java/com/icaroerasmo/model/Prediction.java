@@ -0,0 +1,13 @@
+package com.icaroerasmo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class Prediction {
+    private int label;
+    private String personName;
+    // Distance to the closest enrolled face, smaller is more similar
+    private double distance;
+}
@@ -0,0 +1,80 @@
+package com.icaroerasmo.notification;
+
+import com.icaroerasmo.model.GifFrame;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * The last few seconds of one camera, downscaled and sampled at the clip
+ * frame rate. Slots are allocated once and overwritten in place, so the
+ * decode thread only pays for a small resize a few times per second.
+ */
+public class ClipBuffer implements AutoCloseable {
+
+    private final GifFrame[] slots;
+    private final int width;
+    private final long intervalNanos;
+
+    private volatile long nextSample;
+    private int head;
+    private int size;
+
+    public ClipBuffer(int capacity, int width, double fps) {
+        this.slots = new GifFrame[Math.max(1, capacity)];
+        this.width = width;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        this.nextSample = System.nanoTime();
+    }
+
+    public void offer(Mat frame) {
+        long now = System.nanoTime();
+        if (now - nextSample < 0) {
+            return;
+        }
+        synchronized (this) {
+            nextSample = now + intervalNanos;
+            GifFrame slot = slots[head];
+            if (slot == null) {
+                slot = new GifFrame(null, new Mat());
+                slots[head] = slot;
+            }
+            int height = (int) Math.round((double) frame.rows() * width / frame.cols());
+            try (Size target = new Size(width, height)) {
+                resize(frame, slot.getFrame(), target, 0, 0, INTER_AREA);
+            }
+            slot.setTimestamp(Instant.now());
+            head = (head + 1) % slots.length;
+            size = Math.min(size + 1, slots.length);
+        }
+    }
+
+    // Copies of the buffered frames taken at or after from, oldest first
+    public synchronized List<GifFrame> snapshot(Instant from) {
+        List<GifFrame> frames = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            GifFrame slot = slots[(head - size + i + slots.length) % slots.length];
+            if (!slot.getTimestamp().isBefore(from)) {
+                frames.add(new GifFrame(slot.getTimestamp(), slot.getFrame().clone()));
+            }
+        }
+        return frames;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (GifFrame slot : slots) {
+            if (slot != null) {
+                slot.getFrame().release();
+            }
+        }
+        size = 0;
+    }
+}
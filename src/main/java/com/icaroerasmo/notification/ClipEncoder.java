@@ -0,0 +1,54 @@
+package com.icaroerasmo.notification;
+
+import com.icaroerasmo.model.GifFrame;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_GIF;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_RGB8;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imencode;
+
+// Turns buffered frames into the bytes sent with a notification
+@Component
+public class ClipEncoder {
+
+    public byte[] jpeg(Mat image) {
+        try (BytePointer buffer = new BytePointer()) {
+            if (!imencode(".jpg", image, buffer)) {
+                throw new RuntimeException("Could not encode snapshot");
+            }
+            byte[] bytes = new byte[(int) buffer.limit()];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+
+    public byte[] gif(List<GifFrame> frames, double fps) {
+        Mat first = frames.get(0).getFrame();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(out, first.cols(), first.rows(), 0);
+             OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat()) {
+            recorder.setFormat("gif");
+            recorder.setVideoCodec(AV_CODEC_ID_GIF);
+            recorder.setPixelFormat(AV_PIX_FMT_RGB8);
+            recorder.setFrameRate(fps);
+            recorder.start();
+            for (GifFrame frame : frames) {
+                recorder.record(converter.convert(frame.getFrame()));
+            }
+            recorder.stop();
+        } catch (FrameRecorder.Exception e) {
+            throw new RuntimeException("Could not encode clip", e);
+        }
+
+        return out.toByteArray();
+    }
+}
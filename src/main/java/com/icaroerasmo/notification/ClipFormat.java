@@ -0,0 +1,8 @@
+package com.icaroerasmo.notification;
+
+public enum ClipFormat {
+    // Animated clip around the detection, built from the camera's clip buffer
+    GIF,
+    // Single annotated snapshot of the frame that triggered the announcement
+    JPEG
+}
@@ -0,0 +1,293 @@
+package com.icaroerasmo.notification;
+
+import com.icaroerasmo.metrics.MetricsSource;
+import com.icaroerasmo.metrics.MetricsWriter;
+import com.icaroerasmo.config.NotificationProperties;
+import com.icaroerasmo.model.GifFrame;
+import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.utils.MemorySubsystem;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Sends announcements without blocking the pipeline. Announcements of the
+ * same person on the same camera are coalesced into one message per
+ * cooldown window, sent post-event seconds after the first one so the clip
+ * also shows what happened next. Encoding runs on a bounded executor and a
+ * single sender thread applies the rate limit and retries failed messages
+ * with exponential backoff.
+ */
+@Log4j2
+@Service
+public class NotificationDispatcher implements MetricsSource {
+
+    private final NotificationProperties properties;
+    private final ClipEncoder clipEncoder;
+    private final NotificationSender sender;
+    private final MatUtil matUtil;
+
+    private final Map<String, ClipBuffer> clipBuffers = new ConcurrentHashMap<>();
+    private final Map<String, Burst> bursts = new ConcurrentHashMap<>();
+    private final DelayQueue<OutgoingMessage> outbox = new DelayQueue<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor encoder;
+    private RateLimiter rateLimiter;
+    private Thread senderThread;
+
+    public NotificationDispatcher(NotificationProperties properties, ClipEncoder clipEncoder,
+                                  NotificationSender sender, MatUtil matUtil) {
+        this.properties = properties;
+        this.clipEncoder = clipEncoder;
+        this.sender = sender;
+        this.matUtil = matUtil;
+
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (properties.getTelegram().getBotToken() == null || properties.getTelegram().getChatId() == null) {
+            throw new IllegalStateException("notification.telegram.bot-token and chat-id are required when notifications are enabled");
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemon("notification-scheduler"));
+        encoder = new ThreadPoolExecutor(properties.getEncoderThreads(), properties.getEncoderThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getEncoderQueueCapacity()),
+                daemon("notification-encoder"));
+        rateLimiter = new RateLimiter(properties.getMessagesPerMinute());
+        senderThread = daemon("notification-sender").newThread(this::sendLoop);
+        senderThread.start();
+    }
+
+    // Feeds the camera's clip buffer, called for every decoded frame
+    public void record(String camera, Mat frame) {
+        if (!properties.isEnabled() || properties.getClip().getFormat() != ClipFormat.GIF) {
+            return;
+        }
+        ClipBuffer clipBuffer = clipBuffers.get(camera);
+        if (clipBuffer == null) {
+            clipBuffer = clipBuffers.computeIfAbsent(camera, c -> createClipBuffer());
+        }
+        clipBuffer.offer(frame);
+    }
+
+    public void notify(String camera, String personName, double confidence, Mat image) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+
+        bursts.compute(Burst.key(camera, personName), (key, burst) -> {
+            if (burst == null || now - burst.cooldownUntil >= 0) {
+                Burst next = new Burst(camera, personName, Instant.now(),
+                        now + TimeUnit.SECONDS.toNanos(properties.getCooldownSeconds()), snapshot(image));
+                next.add(confidence);
+                scheduler.schedule(() -> flush(next), properties.getClip().getPostEventSeconds(), TimeUnit.SECONDS);
+                return next;
+            }
+            burst.add(confidence);
+            return burst;
+        });
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getPending() {
+        return outbox.size();
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        writer.counter("notifications_sent", "Telegram messages delivered", getSent());
+        writer.counter("notifications_dropped", "Messages given up on after the retries or a full queue", getDropped());
+        writer.gauge("notifications_pending", "Messages waiting to be sent or retried", getPending());
+    }
+
+    // Bursts still coalescing announcements
+    int getOpenBursts() {
+        return bursts.size();
+    }
+
+    private void flush(Burst burst) {
+        forget(burst);
+
+        List<GifFrame> frames = List.of();
+        ClipBuffer clipBuffer = clipBuffers.get(burst.camera);
+        if (clipBuffer != null) {
+            frames = clipBuffer.snapshot(burst.firstSeen.minusSeconds(properties.getClip().getPreEventSeconds()));
+            frames.forEach(frame -> matUtil.track(MemorySubsystem.NOTIFY, frame.getFrame()));
+        }
+
+        String caption;
+        synchronized (burst) {
+            caption = String.format("Pessoa detectada em %s: %s (%d detecções, confiança: %.1f)",
+                    burst.camera, burst.personName, burst.count, burst.bestConfidence);
+        }
+
+        List<GifFrame> clip = frames;
+        try {
+            encoder.execute(() -> encode(burst, clip, caption));
+        } catch (RejectedExecutionException e) {
+            log.warn("Encoder queue full, dropping notification for {} on {}", burst.personName, burst.camera);
+            dropped.incrementAndGet();
+            release(burst, clip);
+        }
+    }
+
+    // The entry only has to outlive the cooldown window, which may end after the flush
+    private void forget(Burst burst) {
+        long remaining = burst.cooldownUntil - System.nanoTime();
+        if (remaining <= 0) {
+            bursts.remove(burst.key(), burst);
+        } else {
+            scheduler.schedule(() -> bursts.remove(burst.key(), burst), remaining, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void encode(Burst burst, List<GifFrame> frames, String caption) {
+        try {
+            OutgoingMessage message = frames.isEmpty()
+                    ? new OutgoingMessage(ClipFormat.JPEG, clipEncoder.jpeg(burst.snapshot), caption)
+                    : new OutgoingMessage(ClipFormat.GIF, clipEncoder.gif(frames, properties.getClip().getFps()), caption);
+            enqueue(message);
+        } catch (Exception e) {
+            log.error("Could not encode notification for {} on {}", burst.personName, burst.camera, e);
+            dropped.incrementAndGet();
+        } finally {
+            release(burst, frames);
+        }
+    }
+
+    private void enqueue(OutgoingMessage message) {
+        if (outbox.size() >= properties.getRetryQueueCapacity()) {
+            log.warn("Notification queue full, dropping \"{}\"", message.getCaption());
+            dropped.incrementAndGet();
+            return;
+        }
+        outbox.add(message);
+    }
+
+    private void sendLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                OutgoingMessage message = outbox.take();
+                rateLimiter.acquire();
+
+                NotificationSender.SendResult result = sender.send(message);
+                if (result.ok()) {
+                    sent.incrementAndGet();
+                    continue;
+                }
+
+                if (message.getAttempts() + 1 >= properties.getMaxAttempts()) {
+                    log.warn("Giving up on \"{}\" after {} attempts: {}", message.getCaption(),
+                            message.getAttempts() + 1, result.error());
+                    dropped.incrementAndGet();
+                    continue;
+                }
+
+                long backoff = Math.max(result.retryAfterMillis(),
+                        properties.getRetryBackoffMillis() << Math.min(message.getAttempts(), 16));
+                log.warn("Sending \"{}\" failed ({}), retrying in {} ms", message.getCaption(), result.error(), backoff);
+                message.retryAfter(backoff);
+                enqueue(message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ClipBuffer createClipBuffer() {
+        NotificationProperties.Clip clip = properties.getClip();
+        int capacity = (int) Math.ceil((clip.getPreEventSeconds() + clip.getPostEventSeconds()) * clip.getFps()) + 1;
+        return new ClipBuffer(capacity, clip.getWidth(), clip.getFps());
+    }
+
+    // Downscaled copy of the announced frame, used when there is no clip to send
+    private Mat snapshot(Mat image) {
+        int width = Math.min(image.cols(), properties.getClip().getWidth() * 2);
+        int height = (int) Math.round((double) image.rows() * width / image.cols());
+        Mat snapshot = matUtil.track(MemorySubsystem.NOTIFY, new Mat());
+        try (Size size = new Size(width, height)) {
+            resize(image, snapshot, size, 0, 0, INTER_AREA);
+        }
+        return snapshot;
+    }
+
+    private void release(Burst burst, List<GifFrame> frames) {
+        frames.forEach(frame -> matUtil.releaseResources(frame.getFrame()));
+        matUtil.releaseResources(burst.snapshot);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (senderThread == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        encoder.shutdownNow();
+        senderThread.interrupt();
+        clipBuffers.values().forEach(ClipBuffer::close);
+        clipBuffers.clear();
+    }
+
+    // Announcements of one person on one camera within a cooldown window
+    private static class Burst {
+        private final String camera;
+        private final String personName;
+        private final Instant firstSeen;
+        private final long cooldownUntil;
+        private final Mat snapshot;
+        private int count;
+        private double bestConfidence = Double.MAX_VALUE;
+
+        Burst(String camera, String personName, Instant firstSeen, long cooldownUntil, Mat snapshot) {
+            this.camera = camera;
+            this.personName = personName;
+            this.firstSeen = firstSeen;
+            this.cooldownUntil = cooldownUntil;
+            this.snapshot = snapshot;
+        }
+
+        static String key(String camera, String personName) {
+            return camera + "/" + personName;
+        }
+
+        String key() {
+            return key(camera, personName);
+        }
+
+        // confidence is a distance, lower is better
+        synchronized void add(double confidence) {
+            count++;
+            bestConfidence = Math.min(bestConfidence, confidence);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.icaroerasmo.notification;
+
+// Delivers encoded notifications to a chat service
+public interface NotificationSender {
+
+    SendResult send(OutgoingMessage message);
+
+    /**
+     * retryAfterMillis is the wait the service asked for before the next
+     * attempt, or 0 when it did not say.
+     */
+    record SendResult(boolean ok, long retryAfterMillis, String error) {
+
+        public static SendResult sent() {
+            return new SendResult(true, 0, null);
+        }
+
+        public static SendResult failed(String error, long retryAfterMillis) {
+            return new SendResult(false, retryAfterMillis, error);
+        }
+    }
+}
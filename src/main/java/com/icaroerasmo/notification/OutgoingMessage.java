@@ -0,0 +1,34 @@
+package com.icaroerasmo.notification;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+// An encoded notification waiting to be sent, ordered by the time it is due
+@Getter
+@RequiredArgsConstructor
+public class OutgoingMessage implements Delayed {
+
+    private final ClipFormat format;
+    private final byte[] payload;
+    private final String caption;
+    private int attempts;
+    private long dueAt = System.nanoTime();
+
+    void retryAfter(long delayMillis) {
+        attempts++;
+        dueAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(dueAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,23 @@
+package com.icaroerasmo.notification;
+
+import java.util.concurrent.TimeUnit;
+
+// Spaces calls evenly so that no more than a given number happen per minute
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private long nextFree = System.nanoTime();
+
+    public RateLimiter(int perMinute) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+    }
+
+    public synchronized void acquire() throws InterruptedException {
+        long now = System.nanoTime();
+        long wait = nextFree - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        nextFree = Math.max(now, nextFree) + intervalNanos;
+    }
+}
@@ -0,0 +1,59 @@
+package com.icaroerasmo.notification;
+
+import com.icaroerasmo.config.NotificationProperties;
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.SendAnimation;
+import com.pengrad.telegrambot.request.SendPhoto;
+import com.pengrad.telegrambot.response.SendResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Component
+@RequiredArgsConstructor
+public class TelegramNotificationSender implements NotificationSender {
+
+    private final NotificationProperties properties;
+    private TelegramBot bot;
+
+    @Override
+    public SendResult send(OutgoingMessage message) {
+        NotificationProperties.Telegram telegram = properties.getTelegram();
+
+        SendResponse response;
+        try {
+            response = message.getFormat() == ClipFormat.GIF
+                    ? bot().execute(new SendAnimation(telegram.getChatId(), message.getPayload()).caption(message.getCaption()))
+                    : bot().execute(new SendPhoto(telegram.getChatId(), message.getPayload()).caption(message.getCaption()));
+        } catch (RuntimeException e) {
+            // Network errors surface as runtime exceptions
+            return SendResult.failed(e.getMessage(), 0);
+        }
+
+        if (response.isOk()) {
+            return SendResult.sent();
+        }
+
+        Integer retryAfter = response.parameters() != null ? response.parameters().retryAfter() : null;
+        return SendResult.failed(response.errorCode() + " " + response.description(),
+                retryAfter != null ? TimeUnit.SECONDS.toMillis(retryAfter) : 0);
+    }
+
+    private synchronized TelegramBot bot() {
+        if (bot == null) {
+            bot = new TelegramBot.Builder(properties.getTelegram().getBotToken())
+                    .apiUrl(properties.getTelegram().getApiUrl())
+                    .build();
+        }
+        return bot;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (bot != null) {
+            bot.shutdown();
+        }
+    }
+}
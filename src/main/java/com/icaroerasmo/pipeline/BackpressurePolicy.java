@@ -0,0 +1,10 @@
+package com.icaroerasmo.pipeline;
+
+public enum BackpressurePolicy {
+    // Evicts the oldest queued item to make room for the new one (keeps the stream live)
+    DROP_OLDEST,
+    // Discards the incoming item when the queue is full
+    DROP_NEWEST,
+    // Blocks the producer until there is room in the queue
+    BLOCK
+}
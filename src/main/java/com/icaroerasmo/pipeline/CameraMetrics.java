@@ -0,0 +1,62 @@
+package com.icaroerasmo.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per camera counters. decoded counts every frame handed over by the
+ * grabber, processed every frame that made it through the stages without
+ * being dropped, whether or not it had faces.
+ */
+public class CameraMetrics {
+
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private long sampledAt = System.nanoTime();
+    private long sampledDecoded;
+    private long sampledProcessed;
+
+    public void decoded() {
+        decoded.increment();
+    }
+
+    public void processed() {
+        processed.increment();
+    }
+
+    public void reconnected() {
+        reconnects.incrementAndGet();
+    }
+
+    public long getDecoded() {
+        return decoded.sum();
+    }
+
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    // Frame rates since the previous call
+    public synchronized Rates sample() {
+        long now = System.nanoTime();
+        long decodedNow = decoded.sum();
+        long processedNow = processed.sum();
+        double seconds = Math.max(1, now - sampledAt) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        Rates rates = new Rates((decodedNow - sampledDecoded) / seconds, (processedNow - sampledProcessed) / seconds);
+
+        sampledAt = now;
+        sampledDecoded = decodedNow;
+        sampledProcessed = processedNow;
+        return rates;
+    }
+
+    public record Rates(double decodedFps, double processedFps) {}
+}
@@ -0,0 +1,204 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.metrics.LatencyHistogram;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.TimedStage;
+import com.icaroerasmo.model.FaceRecognition;
+import com.icaroerasmo.model.PipelineFrame;
+import com.icaroerasmo.notification.NotificationDispatcher;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.service.AnnouncementService;
+import com.icaroerasmo.service.FaceRecognitionService;
+import com.icaroerasmo.service.RtspFrameExtractorService;
+import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.utils.MemorySubsystem;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * decode -> detect -> recognize -> announce for a single camera.
+ * <p>
+ * Every camera owns its grabber thread, its queues and its stage workers so a
+ * stalled stream can only back up its own queues.
+ */
+@Log4j2
+public class CameraPipeline {
+
+    @Getter
+    private final PipelineProperties.Camera camera;
+    private final PipelineProperties properties;
+    private final RtspFrameExtractorService rtspFrameExtractorService;
+    private final DetectionBatcher detectionBatcher;
+    private final FaceRecognitionService faceRecognitionService;
+    private final AnnouncementService announcementService;
+    private final NotificationDispatcher notificationDispatcher;
+    private final MatUtil matUtil;
+    private final MetricsRegistry metricsRegistry;
+
+    private final AtomicLong sequence = new AtomicLong();
+    @Getter
+    private List<PipelineStage<PipelineFrame, ?>> stages;
+    @Getter
+    private FrameGate gate;
+    private FaceTracker tracker;
+    @Getter
+    private final CameraMetrics metrics = new CameraMetrics();
+    @Getter
+    private StreamSupervisor supervisor;
+
+    public CameraPipeline(PipelineProperties.Camera camera, PipelineProperties properties,
+                          RtspFrameExtractorService rtspFrameExtractorService,
+                          DetectionBatcher detectionBatcher,
+                          FaceRecognitionService faceRecognitionService,
+                          AnnouncementService announcementService,
+                          NotificationDispatcher notificationDispatcher, MatUtil matUtil,
+                          MetricsRegistry metricsRegistry) {
+        this.camera = camera;
+        this.properties = properties;
+        this.rtspFrameExtractorService = rtspFrameExtractorService;
+        this.detectionBatcher = detectionBatcher;
+        this.faceRecognitionService = faceRecognitionService;
+        this.announcementService = announcementService;
+        this.notificationDispatcher = notificationDispatcher;
+        this.matUtil = matUtil;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public void start(FaceRecognitionModel model) {
+
+        final String name = camera.getName();
+        final Consumer<PipelineFrame> release = frame -> matUtil.releaseResources(frame.getImage());
+        final LatencyHistogram detectLatency = metricsRegistry.histogram(TimedStage.DETECT, name);
+        final LatencyHistogram announceLatency = metricsRegistry.histogram(TimedStage.ANNOUNCE, name);
+
+        if (properties.getTracking().isEnabled() && properties.getRecognize().getWorkers() > 1) {
+            // Parallel recognize workers would hand frames to the tracker out of order
+            throw new IllegalStateException("pipeline.tracking.enabled requires pipeline.recognize.workers to be 1");
+        }
+
+        gate = new FrameGate(camera.getGating() != null ? camera.getGating() : properties.getGating());
+        tracker = properties.getTracking().isEnabled() ? new FaceTracker(properties.getTracking()) : null;
+
+        StageQueue<PipelineFrame> announceQueue = queue(properties.getAnnounce(), release);
+        StageQueue<PipelineFrame> recognizeQueue = queue(properties.getRecognize(), release);
+        StageQueue<PipelineFrame> detectQueue = queue(properties.getDetect(), release);
+
+        PipelineStage<PipelineFrame, PipelineFrame> announce = new PipelineStage<>(name + "-announce",
+                announceQueue, properties.getAnnounce().getWorkers(), frame -> {
+                    long startedAt = System.nanoTime();
+                    // A failed announcement is released by the stage's onError
+                    announcementService.announce(name, frame.getRecognition());
+                    metrics.processed();
+                    announceLatency.recordSince(startedAt);
+                    release.accept(frame);
+                    return null;
+                }, frame -> {}, release, release);
+
+        PipelineStage<PipelineFrame, PipelineFrame> recognize = new PipelineStage<>(name + "-recognize",
+                recognizeQueue, properties.getRecognize().getWorkers(), frame -> {
+                    frame.setRecognition(recognize(model, frame));
+                    return frame;
+                }, announceQueue, release, release);
+
+        PipelineStage<PipelineFrame, PipelineFrame> detect = new PipelineStage<>(name + "-detect",
+                detectQueue, properties.getDetect().getWorkers(), frame -> {
+                    long startedAt = System.nanoTime();
+                    try {
+                        frame.setFaces(detectionBatcher.detect(frame.getImage(), camera.getTiling()));
+                        detectLatency.recordSince(startedAt);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        release.accept(frame);
+                        return null;
+                    }
+                    if (frame.getFaces().isEmpty()) {
+                        metrics.processed();
+                        release.accept(frame);
+                        return null;
+                    }
+                    gate.faceDetected();
+                    return frame;
+                }, recognizeQueue, release, release);
+
+        stages = List.of(detect, recognize, announce);
+        stages.forEach(PipelineStage::start);
+
+        supervisor = new StreamSupervisor(camera,
+                camera.getGrabber() != null ? camera.getGrabber() : properties.getGrabber(),
+                properties.getSupervisor(), rtspFrameExtractorService, metrics, img -> decode(img, detectQueue));
+        supervisor.start();
+
+        log.info("Started pipeline for camera {}", name);
+    }
+
+    public void join() throws InterruptedException {
+        join(0);
+    }
+
+    private void join(long millis) throws InterruptedException {
+        if (supervisor != null) {
+            supervisor.join(millis);
+        }
+    }
+
+    // Frames dropped by the stage queues
+    public long getDropped() {
+        return stages == null ? 0 : stages.stream().mapToLong(stage -> stage.getInput().getDropped()).sum();
+    }
+
+    public void stop() {
+        if (supervisor != null) {
+            supervisor.stop();
+        }
+        if (stages != null) {
+            stages.forEach(PipelineStage::stop);
+        }
+        try {
+            join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (gate != null && (supervisor == null || !supervisor.isAlive())) {
+            gate.close();
+        }
+        log.info("Stopped pipeline for camera {}", camera.getName());
+    }
+
+    private void decode(Mat img, StageQueue<PipelineFrame> detectQueue) {
+        // Clips show the scene around a detection, including frames the gate skips
+        notificationDispatcher.record(camera.getName(), img);
+        // Skipped frames take a sequence number too, so the tracker counts them as misses
+        long frameSequence = sequence.getAndIncrement();
+        if (!gate.accept(img)) {
+            return;
+        }
+        // The converter reuses the grabber's buffer, so each queued frame needs its own copy
+        Mat copy = matUtil.track(MemorySubsystem.DECODE, img.clone());
+        try {
+            detectQueue.put(new PipelineFrame(camera.getName(), frameSequence, Instant.now(), copy));
+        } catch (InterruptedException e) {
+            matUtil.releaseResources(copy);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FaceRecognition recognize(FaceRecognitionModel model, PipelineFrame frame) {
+        if (tracker == null) {
+            return faceRecognitionService.recognize(camera.getName(), model, frame.getImage(), frame.getFaces());
+        }
+        return new FaceRecognition(tracker.track(frame.getSequence(), frame.getFaces(),
+                faceRect -> faceRecognitionService.recognize(camera.getName(), model, frame.getImage(), faceRect)),
+                frame.getImage());
+    }
+
+    private StageQueue<PipelineFrame> queue(PipelineProperties.Stage stage, Consumer<PipelineFrame> onDrop) {
+        return new StageQueue<>(stage.getQueueCapacity(), stage.getBackpressure(), onDrop);
+    }
+}
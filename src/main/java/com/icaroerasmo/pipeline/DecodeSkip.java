@@ -0,0 +1,20 @@
+package com.icaroerasmo.pipeline;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Frames the video decoder may drop without decoding them (FFmpeg's skip_frame)
+@Getter
+@RequiredArgsConstructor
+public enum DecodeSkip {
+    // Every frame is decoded
+    NONE("default"),
+    // Frames no other frame references, e.g. non-reference B-frames
+    NONREF("noref"),
+    // Every bidirectional frame
+    BIDIR("bidir"),
+    // Everything but keyframes, roughly one frame per GOP
+    NONKEY("nokey");
+
+    private final String option;
+}
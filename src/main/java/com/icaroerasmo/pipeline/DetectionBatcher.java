@@ -0,0 +1,155 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.service.DeepLearningFaceDetectionService;
+import com.icaroerasmo.service.DetectionMode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects frames submitted by the detect stage of every camera and runs them
+ * through {@link DeepLearningFaceDetectionService#detectBatch(List)} once the
+ * batch is full or the oldest frame has waited long enough.
+ * <p>
+ * When batching is disabled frames are detected one by one on the caller's thread.
+ * Tiled frames are never grouped with other cameras, their tiles already fill
+ * a batch of their own.
+ * <p>
+ * The caller keeps ownership of the submitted frame, so {@link #detect(Mat)}
+ * only returns once no batch holds it anymore, even when interrupted.
+ */
+@Log4j2
+@Component
+public class DetectionBatcher {
+
+    private record Request(Mat image, CompletableFuture<List<Rect>> result) {}
+
+    private final DeepLearningFaceDetectionService deepLearningFaceDetectionService;
+    private final DetectionProperties.Batch properties;
+    private final DetectionProperties.Tiling tiling;
+    private final BlockingQueue<Request> requests;
+    private final ExecutorService executor;
+
+    public DetectionBatcher(DeepLearningFaceDetectionService deepLearningFaceDetectionService,
+                            DetectionProperties detectionProperties) {
+        this.deepLearningFaceDetectionService = deepLearningFaceDetectionService;
+        this.properties = detectionProperties.getBatch();
+        this.tiling = detectionProperties.getTiling();
+
+        if (properties.isEnabled()) {
+            requests = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+            executor = Executors.newFixedThreadPool(properties.getWorkers(),
+                    PipelineStage.namedThreadFactory("detect-batch"));
+            for (int i = 0; i < properties.getWorkers(); i++) {
+                executor.execute(this::work);
+            }
+        } else {
+            requests = null;
+            executor = null;
+        }
+    }
+
+    public List<Rect> detect(Mat image) throws InterruptedException {
+        return detect(image, null);
+    }
+
+    // Detects with the tiling settings of a camera, detection.tiling when it has none
+    public List<Rect> detect(Mat image, DetectionProperties.Tiling cameraTiling) throws InterruptedException {
+
+        DetectionProperties.Tiling settings = cameraTiling != null ? cameraTiling : tiling;
+        if (settings.getMode() == DetectionMode.TILED) {
+            return deepLearningFaceDetectionService.detect(image, settings);
+        }
+
+        if (!properties.isEnabled()) {
+            return deepLearningFaceDetectionService.detect(image);
+        }
+
+        Request request = new Request(image, new CompletableFuture<>());
+        requests.put(request);
+
+        try {
+            return request.result().get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error during batched face detection", e.getCause());
+        } catch (InterruptedException e) {
+            if (!requests.remove(request)) {
+                // A worker already took the frame, the caller can only release it once the batch is done
+                try {
+                    request.result().join();
+                } catch (CompletionException | CancellationException ignored) {
+                    // Only the end of the batch matters here
+                }
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void work() {
+        List<Request> batch = new ArrayList<>(properties.getMaxSize());
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                batch.forEach(request -> request.result().cancel(true));
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                List<List<Rect>> faces = deepLearningFaceDetectionService.detectBatch(
+                        batch.stream().map(Request::image).toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result().complete(faces.get(i));
+                }
+            } catch (Exception e) {
+                log.error("Error detecting batch of {} frames", batch.size(), e);
+                batch.forEach(request -> request.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Blocks for the first frame, then waits at most maxWaitMillis for the batch to fill up
+    private void collect(List<Request> batch) throws InterruptedException {
+        batch.add(requests.take());
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getMaxWaitMillis());
+
+        while (batch.size() < properties.getMaxSize()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Request request = requests.poll(remaining, TimeUnit.NANOSECONDS);
+            if (request == null) {
+                break;
+            }
+            batch.add(request);
+        }
+    }
+}
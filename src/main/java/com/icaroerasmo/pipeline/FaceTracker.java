@@ -0,0 +1,212 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.model.FaceRecognition;
+import org.bytedeco.opencv.opencv_core.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Associates the faces detected on consecutive frames of one camera and
+ * keeps the recognition result of each track, so the recognizer only runs
+ * for new tracks, when the cached result is older than the re-verify
+ * interval or when the face box moved or resized a lot.
+ * <p>
+ * Tracks are matched greedily by IoU against a constant velocity prediction
+ * of where each track should be on the current frame.
+ * <p>
+ * Frames are identified by their decode sequence, so frames that never reach
+ * the tracker (skipped by the gate, dropped by a queue or without faces)
+ * count as misses. Frames must come in sequence order; one older than the
+ * last tracked frame is recognized without touching the tracks.
+ */
+public class FaceTracker {
+
+    private final PipelineProperties.Tracking tracking;
+    private final long reverifyNanos;
+    private final List<Track> tracks = new ArrayList<>();
+    private long nextId;
+    private long lastSequence = -1;
+
+    public FaceTracker(PipelineProperties.Tracking tracking) {
+        this.tracking = tracking;
+        this.reverifyNanos = TimeUnit.SECONDS.toNanos(tracking.getReverifySeconds());
+    }
+
+    public List<FaceRecognition.DetectedFaces> track(long sequence, List<Rect> faces,
+                                                     Function<Rect, FaceRecognition.DetectedFaces> recognizer) {
+
+        long now = System.nanoTime();
+        Track[] assigned = assign(sequence, faces);
+        List<FaceRecognition.DetectedFaces> detectedFaces = new ArrayList<>(faces.size());
+
+        for (int i = 0; i < faces.size(); i++) {
+            Rect faceRect = faces.get(i);
+
+            if (assigned == null) {
+                FaceRecognition.DetectedFaces recognized = recognizer.apply(faceRect);
+                if (recognized != null) {
+                    detectedFaces.add(recognized);
+                }
+                continue;
+            }
+
+            Track track = assigned[i];
+
+            FaceRecognition.DetectedFaces cached = cached(track, faceRect, now);
+
+            if (cached != null) {
+                detectedFaces.add(cached);
+                continue;
+            }
+
+            FaceRecognition.DetectedFaces recognized = recognizer.apply(faceRect);
+            if (recognized == null) {
+                continue;
+            }
+
+            remember(track, recognized, faceRect, now);
+            detectedFaces.add(new FaceRecognition.DetectedFaces(recognized.getPersonName(),
+                    recognized.getConfidence(), faceRect, track.id));
+        }
+
+        return detectedFaces;
+    }
+
+    public synchronized int size() {
+        return tracks.size();
+    }
+
+    /**
+     * Matches every face to an existing track or opens a new one. Tracks not
+     * seen for more than maxMissedFrames sequences are dropped.
+     *
+     * @return the track of every face, null when the frame is older than the last one tracked
+     */
+    private synchronized Track[] assign(long sequence, List<Rect> faces) {
+
+        if (sequence <= lastSequence) {
+            return null;
+        }
+        lastSequence = sequence;
+
+        Track[] assigned = new Track[faces.size()];
+        boolean[] matched = new boolean[tracks.size()];
+
+        List<double[]> candidates = new ArrayList<>();
+        for (int t = 0; t < tracks.size(); t++) {
+            Track track = tracks.get(t);
+            if (track.expired(sequence - 1)) {
+                // missed too many of the frames skipped since the last one tracked
+                continue;
+            }
+            for (int f = 0; f < faces.size(); f++) {
+                double iou = track.predictedIou(faces.get(f), sequence);
+                if (iou >= tracking.getMatchIou()) {
+                    candidates.add(new double[]{iou, t, f});
+                }
+            }
+        }
+        candidates.sort((a, b) -> Double.compare(b[0], a[0]));
+
+        for (double[] candidate : candidates) {
+            int t = (int) candidate[1];
+            int f = (int) candidate[2];
+            if (!matched[t] && assigned[f] == null) {
+                matched[t] = true;
+                assigned[f] = tracks.get(t);
+                assigned[f].update(faces.get(f), sequence);
+            }
+        }
+
+        Iterator<Track> iterator = tracks.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expired(sequence)) {
+                iterator.remove();
+            }
+        }
+
+        for (int f = 0; f < faces.size(); f++) {
+            if (assigned[f] == null) {
+                assigned[f] = new Track(nextId++, faces.get(f), sequence);
+                tracks.add(assigned[f]);
+            }
+        }
+
+        return assigned;
+    }
+
+    private synchronized FaceRecognition.DetectedFaces cached(Track track, Rect faceRect, long now) {
+        if (track.personName == null
+                || now - track.verifiedAt > reverifyNanos
+                || iou(track.verifiedBox, box(faceRect)) < tracking.getReverifyIou()) {
+            return null;
+        }
+        return new FaceRecognition.DetectedFaces(track.personName, track.confidence, faceRect, track.id);
+    }
+
+    private synchronized void remember(Track track, FaceRecognition.DetectedFaces recognized, Rect faceRect, long now) {
+        track.personName = recognized.getPersonName();
+        track.confidence = recognized.getConfidence();
+        track.verifiedBox = box(faceRect);
+        track.verifiedAt = now;
+    }
+
+    private static double[] box(Rect rect) {
+        return new double[]{rect.x(), rect.y(), rect.width(), rect.height()};
+    }
+
+    private static double iou(double[] a, double[] b) {
+        double ix = Math.max(0, Math.min(a[0] + a[2], b[0] + b[2]) - Math.max(a[0], b[0]));
+        double iy = Math.max(0, Math.min(a[1] + a[3], b[1] + b[3]) - Math.max(a[1], b[1]));
+        double intersection = ix * iy;
+        double union = a[2] * a[3] + b[2] * b[3] - intersection;
+        return union <= 0 ? 0 : intersection / union;
+    }
+
+    private class Track {
+        private final long id;
+        private double[] box;
+        private double vx, vy;
+        private long lastSeen;
+
+        private String personName;
+        private Double confidence;
+        private double[] verifiedBox;
+        private long verifiedAt;
+
+        private Track(long id, Rect rect, long sequence) {
+            this.id = id;
+            this.box = box(rect);
+            this.lastSeen = sequence;
+        }
+
+        // Whether the track missed more than maxMissedFrames frames once the given one is over
+        private boolean expired(long sequence) {
+            return sequence - lastSeen > tracking.getMaxMissedFrames();
+        }
+
+        // Overlap with the box moved by the estimated velocity for every frame since the last match
+        private double predictedIou(Rect rect, long sequence) {
+            double steps = sequence - lastSeen;
+            double[] predicted = Arrays.copyOf(box, 4);
+            predicted[0] += vx * steps;
+            predicted[1] += vy * steps;
+            return iou(predicted, box(rect));
+        }
+
+        private void update(Rect rect, long sequence) {
+            double[] next = box(rect);
+            double steps = sequence - lastSeen;
+            vx = 0.5 * vx + 0.5 * (next[0] + next[2] / 2 - box[0] - box[2] / 2) / steps;
+            vy = 0.5 * vy + 0.5 * (next[1] + next[3] / 2 - box[1] - box[3] / 2) / steps;
+            box = next;
+            lastSeen = sequence;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.PipelineProperties;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.bytedeco.opencv.global.opencv_core.absdiff;
+import static org.bytedeco.opencv.global.opencv_core.countNonZero;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Decides, on the decode thread, which frames of a camera are worth running
+ * through detection. After a face is found every frame is let through for
+ * a while so recognition does not lose the person.
+ * <p>
+ * Not thread safe: {@link #accept(Mat)} must always be called by the same
+ * thread. {@link #faceDetected()} and the counters may be used from any thread.
+ */
+public class FrameGate implements AutoCloseable {
+
+    private final PipelineProperties.Gating gating;
+    private final long intervalNanos;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile long fullRateUntil;
+
+    private long frameIndex;
+    private long nextSampleAt;
+
+    private final Mat small = new Mat();
+    private final Mat diff = new Mat();
+    private final Size blurSize = new Size(5, 5);
+    private Mat gray = new Mat();
+    private Mat previous = new Mat();
+    private Size smallSize;
+
+    public FrameGate(PipelineProperties.Gating gating) {
+        this.gating = gating;
+        this.intervalNanos = gating.getTargetFps() > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / gating.getTargetFps()) : 0;
+    }
+
+    public boolean accept(Mat frame) {
+        total.incrementAndGet();
+
+        long now = System.nanoTime();
+        boolean accepted = now - fullRateUntil < 0 || sample(frame, now);
+
+        if (!accepted) {
+            skipped.incrementAndGet();
+        }
+
+        return accepted;
+    }
+
+    public void faceDetected() {
+        fullRateUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(gating.getFullRateAfterFaceSeconds());
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public double getSkippedRatio() {
+        long frames = total.get();
+        return frames == 0 ? 0 : (double) skipped.get() / frames;
+    }
+
+    @Override
+    public void close() {
+        small.release();
+        diff.release();
+        gray.release();
+        previous.release();
+        blurSize.close();
+        if (smallSize != null) {
+            smallSize.close();
+        }
+    }
+
+    private boolean sample(Mat frame, long now) {
+        return switch (gating.getStrategy()) {
+            case NONE -> true;
+            case EVERY_NTH -> frameIndex++ % Math.max(1, gating.getEveryNth()) == 0;
+            case TARGET_FPS -> {
+                if (now - nextSampleAt < 0) {
+                    yield false;
+                }
+                nextSampleAt = now + intervalNanos;
+                yield true;
+            }
+            case MOTION -> hasMotion(frame);
+        };
+    }
+
+    // Frame differencing over a downscaled, blurred grayscale copy of the frame
+    private boolean hasMotion(Mat frame) {
+        if (smallSize == null) {
+            int width = Math.min(gating.getMotionWidth(), frame.cols());
+            int height = Math.max(1, frame.rows() * width / frame.cols());
+            smallSize = new Size(width, height);
+        }
+
+        resize(frame, small, smallSize, 0, 0, INTER_AREA);
+        if (small.channels() == 3) {
+            cvtColor(small, gray, COLOR_BGR2GRAY);
+        } else {
+            small.copyTo(gray);
+        }
+        GaussianBlur(gray, gray, blurSize, 0);
+
+        if (previous.empty()) {
+            swap();
+            return true;
+        }
+
+        absdiff(gray, previous, diff);
+        threshold(diff, diff, gating.getMotionPixelThreshold(), 255, THRESH_BINARY);
+        double changed = (double) countNonZero(diff) / diff.total();
+
+        swap();
+
+        return changed >= gating.getMotionAreaRatio();
+    }
+
+    private void swap() {
+        Mat tmp = previous;
+        previous = gray;
+        gray = tmp;
+    }
+}
@@ -0,0 +1,12 @@
+package com.icaroerasmo.pipeline;
+
+public enum GatingStrategy {
+    // Every decoded frame goes to detection
+    NONE,
+    // Only one of every N frames goes to detection
+    EVERY_NTH,
+    // Frames are sampled to approach a target frame rate
+    TARGET_FPS,
+    // Frames go to detection only when enough of the scene changed since the previous frame
+    MOTION
+}
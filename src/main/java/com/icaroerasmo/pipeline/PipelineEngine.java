@@ -0,0 +1,118 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.MetricsSource;
+import com.icaroerasmo.metrics.MetricsWriter;
+import com.icaroerasmo.notification.NotificationDispatcher;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.service.AnnouncementService;
+import com.icaroerasmo.service.FaceRecognitionService;
+import com.icaroerasmo.service.RtspFrameExtractorService;
+import com.icaroerasmo.utils.MatUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class PipelineEngine implements MetricsSource {
+
+    private final PipelineProperties properties;
+    private final RtspFrameExtractorService rtspFrameExtractorService;
+    private final DetectionBatcher detectionBatcher;
+    private final FaceRecognitionService faceRecognitionService;
+    private final AnnouncementService announcementService;
+    private final NotificationDispatcher notificationDispatcher;
+    private final MatUtil matUtil;
+    private final MetricsRegistry metricsRegistry;
+
+    private final List<CameraPipeline> pipelines = new ArrayList<>();
+
+    public synchronized void start(FaceRecognitionModel model) {
+        if (properties.getCameras().isEmpty()) {
+            log.warn("No cameras configured under pipeline.cameras");
+            return;
+        }
+
+        properties.getCameras().forEach(camera -> {
+            CameraPipeline pipeline = new CameraPipeline(camera, properties, rtspFrameExtractorService,
+                    detectionBatcher, faceRecognitionService, announcementService, notificationDispatcher, matUtil,
+                    metricsRegistry);
+            pipeline.start(model);
+            pipelines.add(pipeline);
+        });
+    }
+
+    // Blocks until every camera stream has ended
+    public void awaitTermination() throws InterruptedException {
+        for (CameraPipeline pipeline : List.copyOf(pipelines)) {
+            pipeline.join();
+        }
+    }
+
+    public List<CameraPipeline> getPipelines() {
+        return List.copyOf(pipelines);
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    private void logStats() {
+        getPipelines().forEach(pipeline -> {
+            FrameGate gate = pipeline.getGate();
+            CameraMetrics metrics = pipeline.getMetrics();
+            CameraMetrics.Rates rates = metrics.sample();
+            log.info("Camera {}: {}, {} fps decoded, {} fps processed, {} frames decoded, " +
+                            "{} skipped by gating ({}%), {} dropped, queues {}, {} reconnects",
+                    pipeline.getCamera().getName(), pipeline.getSupervisor().getState(),
+                    String.format("%.1f", rates.decodedFps()), String.format("%.1f", rates.processedFps()),
+                    metrics.getDecoded(), gate.getSkipped(), String.format("%.1f", gate.getSkippedRatio() * 100),
+                    pipeline.getDropped(),
+                    pipeline.getStages().stream().map(stage -> stage.getInput().size()).toList(),
+                    metrics.getReconnects());
+        });
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        getPipelines().forEach(pipeline -> {
+            String camera = pipeline.getCamera().getName();
+            CameraMetrics metrics = pipeline.getMetrics();
+            writer.counter("frames_decoded", "Frames handed over by the grabber", metrics.getDecoded(), "camera", camera);
+            writer.counter("frames_processed", "Frames that went through every stage", metrics.getProcessed(),
+                    "camera", camera);
+            writer.counter("stream_reconnects", "Reconnections of the camera stream", metrics.getReconnects(),
+                    "camera", camera);
+            writer.gauge("stream_streaming", "1 while frames are arriving",
+                    pipeline.getSupervisor().getState() == StreamState.STREAMING ? 1 : 0, "camera", camera);
+            FrameGate gate = pipeline.getGate();
+            writer.counter("frames_gated", "Frames skipped by gating", gate == null ? 0 : gate.getSkipped(),
+                    "camera", camera);
+            pipeline.getStages().forEach(stage -> {
+                String name = stage.getName().substring(camera.length() + 1);
+                writer.counter("frames_dropped", "Frames dropped by a full stage queue", stage.getInput().getDropped(),
+                        "camera", camera, "stage", name);
+                writer.gauge("queue_size", "Frames waiting for a stage", stage.getInput().size(),
+                        "camera", camera, "stage", name);
+            });
+        });
+    }
+
+    // Watchdog for streams that stopped delivering frames
+    @Scheduled(fixedDelay = 1000)
+    private void checkStalls() {
+        long now = System.nanoTime();
+        getPipelines().forEach(pipeline -> pipeline.getSupervisor().checkStall(now));
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        pipelines.forEach(CameraPipeline::stop);
+        pipelines.clear();
+    }
+}
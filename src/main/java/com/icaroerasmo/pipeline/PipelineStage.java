@@ -0,0 +1,104 @@
+package com.icaroerasmo.pipeline;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A pool of workers draining one {@link StageQueue}, applying the handler and
+ * handing the result over to the next stage. A handler returning {@code null}
+ * ends the item's journey through the pipeline.
+ * <p>
+ * {@code onError} releases an input the handler failed on, {@code onDiscard}
+ * a result that could not be handed over because the worker was interrupted.
+ */
+@Log4j2
+public class PipelineStage<I, O> {
+
+    @Getter
+    private final String name;
+    @Getter
+    private final StageQueue<I> input;
+    private final int workers;
+    private final Function<I, O> handler;
+    private final StageSink<O> downstream;
+    private final Consumer<I> onError;
+    private final Consumer<O> onDiscard;
+    private ExecutorService executor;
+
+    public PipelineStage(String name, StageQueue<I> input, int workers,
+                         Function<I, O> handler, StageSink<O> downstream, Consumer<I> onError,
+                         Consumer<O> onDiscard) {
+        this.name = name;
+        this.input = input;
+        this.workers = workers;
+        this.handler = handler;
+        this.downstream = downstream;
+        this.onError = onError;
+        this.onDiscard = onDiscard;
+    }
+
+    public void start() {
+        executor = Executors.newFixedThreadPool(workers, namedThreadFactory(name));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("Stage {} did not stop in time", name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        input.clear();
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            I item;
+            try {
+                item = input.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            O result = null;
+            try {
+                result = handler.apply(item);
+                if (result != null) {
+                    downstream.put(result);
+                }
+            } catch (InterruptedException e) {
+                // Neither forwarded nor released otherwise
+                onDiscard.accept(result);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error processing item on stage {}", name, e);
+                onError.accept(item);
+            }
+        }
+    }
+
+    static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
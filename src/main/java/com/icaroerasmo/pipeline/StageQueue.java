@@ -0,0 +1,69 @@
+package com.icaroerasmo.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded hand-off between two pipeline stages. What happens when the queue
+ * is full is decided by the {@link BackpressurePolicy}; dropped items are
+ * passed to {@code onDrop} so native resources can be released.
+ */
+public class StageQueue<T> implements StageSink<T> {
+
+    private final BlockingQueue<T> queue;
+    private final BackpressurePolicy policy;
+    private final Consumer<T> onDrop;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public StageQueue(int capacity, BackpressurePolicy policy, Consumer<T> onDrop) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.onDrop = onDrop;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        switch (policy) {
+            case BLOCK -> queue.put(item);
+            case DROP_NEWEST -> {
+                if (!queue.offer(item)) {
+                    drop(item);
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(item)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+            }
+        }
+    }
+
+    public T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void clear() {
+        T item;
+        while ((item = queue.poll()) != null) {
+            onDrop.accept(item);
+        }
+    }
+
+    private void drop(T item) {
+        dropped.incrementAndGet();
+        onDrop.accept(item);
+    }
+}
@@ -0,0 +1,6 @@
+package com.icaroerasmo.pipeline;
+
+@FunctionalInterface
+public interface StageSink<T> {
+    void put(T item) throws InterruptedException;
+}
@@ -0,0 +1,13 @@
+package com.icaroerasmo.pipeline;
+
+public enum StreamState {
+    // Opening the input
+    CONNECTING,
+    // Frames are arriving
+    STREAMING,
+    // No frame for longer than the stall timeout, a reconnect was requested
+    STALLED,
+    // Waiting before the next connection attempt
+    BACKOFF,
+    STOPPED
+}
@@ -0,0 +1,189 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.service.RtspFrameExtractorService;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps one camera's grabber running. The stream is opened again with
+ * exponential backoff whenever it fails or ends, and a watchdog asks for a
+ * reconnect when no frame arrived within the stall timeout.
+ * <p>
+ * A grab blocked inside FFmpeg cannot be interrupted, and the grabber cannot
+ * be closed from another thread while a grab holds its lock. A stalled
+ * grabber thread is therefore abandoned: the watchdog starts a new one
+ * right away, and the old thread only closes its grabber once the socket
+ * read timeout lets the grab return, without delivering further frames.
+ * <p>
+ * Stall time only counts time spent grabbing, a consumer blocked by a full
+ * downstream queue does not make the camera look stalled.
+ * <p>
+ * Grabbers run on platform threads: a virtual thread blocked in a native
+ * grab pins its carrier, so a few dead cameras could starve the others.
+ */
+@Log4j2
+public class StreamSupervisor {
+
+    private final PipelineProperties.Camera camera;
+    private final PipelineProperties.Grabber grabber;
+    private final PipelineProperties.Supervisor settings;
+    private final RtspFrameExtractorService rtspFrameExtractorService;
+    private final CameraMetrics metrics;
+    private final Consumer<Mat> consumer;
+
+    @Getter
+    private volatile StreamState state = StreamState.STOPPED;
+    private volatile boolean running;
+    private volatile long lastProgress;
+    // Set while a frame is handed to the consumer, which may block on back-pressure
+    private volatile boolean delivering;
+    // Thread currently owning the stream, abandoned threads exit once their grab returns
+    private volatile Thread thread;
+
+    public StreamSupervisor(PipelineProperties.Camera camera, PipelineProperties.Grabber grabber,
+                            PipelineProperties.Supervisor settings,
+                            RtspFrameExtractorService rtspFrameExtractorService,
+                            CameraMetrics metrics, Consumer<Mat> consumer) {
+        this.camera = camera;
+        this.grabber = grabber;
+        this.settings = settings;
+        this.rtspFrameExtractorService = rtspFrameExtractorService;
+        this.metrics = metrics;
+        this.consumer = consumer;
+    }
+
+    public void start() {
+        running = true;
+        startThread();
+    }
+
+    // Assigned before it starts, so the new thread already sees itself as the owner
+    private void startThread() {
+        Thread next = Thread.ofPlatform().daemon().name(camera.getName() + "-decode").unstarted(this::supervise);
+        thread = next;
+        next.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    public void join(long millis) throws InterruptedException {
+        Thread current = thread;
+        if (current != null) {
+            if (millis > 0) {
+                current.join(millis);
+            } else {
+                current.join();
+            }
+        }
+    }
+
+    public boolean isAlive() {
+        Thread current = thread;
+        return current != null && current.isAlive();
+    }
+
+    // Called periodically by the watchdog
+    public synchronized void checkStall(long now) {
+        StreamState current = state;
+        if (running && !delivering && (current == StreamState.CONNECTING || current == StreamState.STREAMING)
+                && now - lastProgress > TimeUnit.SECONDS.toNanos(settings.getStallTimeoutSeconds())) {
+            log.warn("Camera {} stalled, no frame for {}s, reconnecting on a new grabber", camera.getName(),
+                    TimeUnit.NANOSECONDS.toSeconds(now - lastProgress));
+            state = StreamState.STALLED;
+            Thread stalled = thread;
+            // Ends the old loop as soon as its grab returns
+            stalled.interrupt();
+            lastProgress = now;
+            metrics.reconnected();
+            startThread();
+        }
+    }
+
+    private boolean owner() {
+        return Thread.currentThread() == thread;
+    }
+
+    private void supervise() {
+        int failures = 0;
+
+        while (running && owner()) {
+            long framesBefore = metrics.getDecoded();
+            lastProgress = System.nanoTime();
+            state = StreamState.CONNECTING;
+
+            try {
+                rtspFrameExtractorService.extract(camera.getName(), camera.getUrl(), grabber, img -> {
+                    if (!owner()) {
+                        // Abandoned after a stall, the new thread owns the stream
+                        return;
+                    }
+                    state = StreamState.STREAMING;
+                    metrics.decoded();
+                    delivering = true;
+                    try {
+                        consumer.accept(img);
+                    } finally {
+                        // Time blocked downstream is not grab time
+                        lastProgress = System.nanoTime();
+                        delivering = false;
+                    }
+                });
+                if (owner()) {
+                    log.info("Stream for camera {} ended", camera.getName());
+                }
+            } catch (Exception e) {
+                if (owner()) {
+                    log.warn("Stream for camera {} failed: {}", camera.getName(), e.getMessage());
+                    log.debug("Stream failure", e);
+                }
+            }
+
+            if (!owner()) {
+                log.info("Abandoned grabber of camera {} released", camera.getName());
+                return;
+            }
+            // Clears a stop interrupt left over, a stop also sets running to false
+            Thread.interrupted();
+            if (!running || !settings.isReconnect()) {
+                break;
+            }
+
+            failures = metrics.getDecoded() > framesBefore ? 0 : failures + 1;
+            long backoff = backoffMillis(failures);
+            state = StreamState.BACKOFF;
+            log.info("Reconnecting camera {} in {} ms", camera.getName(), backoff);
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            }
+            metrics.reconnected();
+        }
+
+        if (owner()) {
+            state = StreamState.STOPPED;
+        }
+    }
+
+    // initial * 2^failures, capped, with up to 20% jitter so cameras behind one switch do not reconnect in lockstep
+    private long backoffMillis(int failures) {
+        long backoff = settings.getInitialBackoffMillis() << Math.min(failures, 20);
+        backoff = Math.min(Math.max(backoff, settings.getInitialBackoffMillis()), settings.getMaxBackoffMillis());
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+    }
+}
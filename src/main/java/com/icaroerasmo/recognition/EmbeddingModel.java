@@ -0,0 +1,93 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.model.Prediction;
+import lombok.Getter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gallery of L2 normalized face embeddings held in one primitive row major
+ * matrix. A face is matched by computing its embedding and scanning the
+ * rows by dot product, which for normalized vectors is the cosine
+ * similarity; distances are reported as {@code 1 - similarity}.
+ * <p>
+ * With 128 to 512 floats per face the scan costs a fraction of an LBPH
+ * histogram comparison, so it stays single threaded; the dot products use
+ * the Vector API like the LBPH scorers when it is available.
+ */
+@Getter
+public class EmbeddingModel implements FaceRecognitionModel {
+
+    private final int dimensions;
+    private final int count;
+    private final int[] labels;
+    private final List<String> personNames;
+    private final float[] vectors;
+    private final double threshold;
+    private final EmbeddingNetPool netPool;
+    private final EmbeddingScorer scorer;
+    private final ThreadLocal<float[]> queries;
+
+    public EmbeddingModel(EmbeddingModelFile.Contents contents, double threshold, EmbeddingNetPool netPool,
+                          EmbeddingScorer scorer) {
+        this(contents, netPool.getDimensions(), threshold, netPool, scorer);
+    }
+
+    // Lets the gallery be searched without a network, predict() needs netPool
+    EmbeddingModel(EmbeddingModelFile.Contents contents, int dimensions, double threshold, EmbeddingNetPool netPool,
+                   EmbeddingScorer scorer) {
+        if (contents.count() > 0 && contents.dimensions() != dimensions) {
+            throw new IllegalArgumentException("Gallery embeddings have " + contents.dimensions() +
+                    " dimensions but the network produces " + dimensions + ", retrain the model");
+        }
+        this.dimensions = dimensions;
+        this.count = contents.count();
+        this.labels = contents.labels();
+        this.personNames = contents.personNames();
+        this.vectors = contents.vectors();
+        this.threshold = threshold;
+        this.netPool = netPool;
+        this.scorer = scorer;
+        this.queries = ThreadLocal.withInitial(() -> new float[dimensions]);
+    }
+
+    @Override
+    public Prediction predict(Mat face) {
+        List<Prediction> predictions = predict(face, 1);
+        return predictions.isEmpty() ? new Prediction(-1, null, Double.MAX_VALUE) : predictions.get(0);
+    }
+
+    @Override
+    public List<Prediction> predict(Mat face, int k) {
+        float[] query = queries.get();
+        netPool.embed(face, query);
+
+        TopK topK = search(query, k);
+
+        List<Prediction> predictions = new ArrayList<>(topK.getSize());
+        for (int i = 0; i < topK.getSize(); i++) {
+            predictions.add(new Prediction(topK.label(i), personName(topK.label(i)), topK.distance(i)));
+        }
+        return predictions;
+    }
+
+    // Closest labels to an already computed embedding, at most one entry per label
+    public TopK search(float[] query, int k) {
+        TopK topK = new TopK(k, threshold);
+        for (int i = 0; i < count; i++) {
+            topK.offer(labels[i], 1 - scorer.dot(query, vectors, i * dimensions, dimensions));
+        }
+        return topK;
+    }
+
+    public String personName(int label) {
+        return label >= 0 && label < personNames.size() ? personNames.get(label) : null;
+    }
+
+    @Override
+    public void close() {
+        // Heap only, the networks belong to the pool
+    }
+}
@@ -0,0 +1,132 @@
+package com.icaroerasmo.recognition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Binary layout of a gallery of face embeddings, little endian like
+ * {@link LbphModelFile}.
+ * <pre>
+ *  0  int    magic ("EMBB")
+ *  4  int    version
+ *  8  int    embedding count
+ * 12  int    embedding dimensions
+ * 16  int    label table entries
+ * 20  int    reserved
+ * 24  long   label table offset
+ * 32  long   embeddings offset (aligned to 64 bytes)
+ * 40  reserved up to 64
+ * 64  int[count] label of every embedding
+ *     label table: (int label, int length, utf-8 bytes) per entry
+ *     float32[count * dimensions] L2 normalized embeddings, one after the other
+ * </pre>
+ */
+public final class EmbeddingModelFile {
+
+    public static final int MAGIC = 0x424D4245;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+
+    private EmbeddingModelFile() {
+    }
+
+    // Embeddings of every enrolled face, row i of vectors belonging to labels[i]
+    public record Contents(int dimensions, int[] labels, List<String> personNames, float[] vectors) {
+        public int count() {
+            return labels.length;
+        }
+    }
+
+    public static void write(Path target, Contents contents) throws IOException {
+
+        int count = contents.count();
+        int dims = contents.dimensions();
+        byte[][] names = contents.personNames().stream().map(name -> name.getBytes(UTF_8)).toArray(byte[][]::new);
+
+        long labelTableOffset = HEADER_SIZE + 4L * count;
+        long labelTableSize = 0;
+        for (byte[] name : names) {
+            labelTableSize += 8 + name.length;
+        }
+        long vectorsOffset = LbphModelFile.align(labelTableOffset + labelTableSize);
+
+        ByteBuffer metadata = ByteBuffer.allocate((int) vectorsOffset).order(ByteOrder.LITTLE_ENDIAN);
+        metadata.putInt(MAGIC).putInt(VERSION)
+                .putInt(count).putInt(dims).putInt(names.length).putInt(0)
+                .putLong(labelTableOffset).putLong(vectorsOffset);
+
+        metadata.position(HEADER_SIZE);
+        for (int label : contents.labels()) {
+            metadata.putInt(label);
+        }
+        for (int i = 0; i < names.length; i++) {
+            metadata.putInt(i).putInt(names[i].length).put(names[i]);
+        }
+        metadata.position(0);
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            writeFully(channel, metadata);
+
+            ByteBuffer vectors = ByteBuffer.allocate((int) ((long) count * dims * Float.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+            vectors.asFloatBuffer().put(contents.vectors(), 0, count * dims);
+            writeFully(channel, vectors);
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads the whole gallery to the heap, embeddings are small enough to be scanned from there
+    public static Contents read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an embedding model: " + file);
+        }
+
+        int count = buffer.getInt(8);
+        int dims = buffer.getInt(12);
+        int labelCount = buffer.getInt(16);
+        long labelTableOffset = buffer.getLong(24);
+        long vectorsOffset = buffer.getLong(32);
+
+        int[] labels = new int[count];
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().get(labels);
+
+        List<String> personNames = new ArrayList<>(labelCount);
+        buffer.position((int) labelTableOffset);
+        for (int i = 0; i < labelCount; i++) {
+            int label = buffer.getInt();
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            while (personNames.size() <= label) {
+                personNames.add(null);
+            }
+            personNames.set(label, new String(name, UTF_8));
+        }
+
+        float[] vectors = new float[count * dims];
+        buffer.position((int) vectorsOffset);
+        buffer.asFloatBuffer().get(vectors);
+
+        return new Contents(dims, labels, personNames, vectors);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.utils.MemorySubsystem;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_dnn.Net;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32F;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_dnn.blobFromImage;
+import static org.bytedeco.opencv.global.opencv_dnn.readNet;
+
+/**
+ * Fixed set of face embedding {@link Net} instances, each with its own input
+ * and output buffers, borrowed for one forward pass at a time like the
+ * detection nets of the FaceDetectionNetPool.
+ * <p>
+ * Embeddings are L2 normalized, so the dot product of two of them is their
+ * cosine similarity. Their size is found by running the network once.
+ */
+@Log4j2
+@Component
+@ConditionalOnProperty(name = "recognition.backend", havingValue = "EMBEDDING")
+public class EmbeddingNetPool {
+
+    private final List<Context> contexts = new ArrayList<>();
+    private final BlockingQueue<Context> available;
+    private final RecognitionProperties.Embedding properties;
+    private final NativeMemoryTracker memoryTracker;
+    @Getter
+    private final int dimensions;
+
+    public EmbeddingNetPool(RecognitionProperties properties, NativeMemoryTracker memoryTracker) {
+        this.properties = properties.getEmbedding();
+        this.memoryTracker = memoryTracker;
+
+        int size = Math.max(1, this.properties.getPoolSize());
+        this.available = new ArrayBlockingQueue<>(size);
+
+        String model = resolve(this.properties.getModel());
+        String config = this.properties.getConfig() == null || this.properties.getConfig().isEmpty()
+                ? "" : resolve(this.properties.getConfig());
+
+        for (int i = 0; i < size; i++) {
+            Context context = new Context(readNet(model, config, ""));
+            memoryTracker.trackResident(MemorySubsystem.RECOGNIZE, context.blob);
+            contexts.add(context);
+            available.add(context);
+        }
+
+        try (Mat probe = new Mat(this.properties.getInputHeight(), this.properties.getInputWidth(), CV_8UC3,
+                Scalar.all(127))) {
+            this.dimensions = execute(context -> (int) context.forward(probe).total());
+        }
+
+        log.info("Face embedding pool started with {} networks producing {} dimensional embeddings from {}",
+                size, dimensions, model);
+    }
+
+    public float[] embed(Mat face) {
+        float[] embedding = new float[dimensions];
+        embed(face, embedding);
+        return embedding;
+    }
+
+    // Writes the normalized embedding of a crop prepared by FaceNormalizer
+    public void embed(Mat face, float[] embedding) {
+        execute(context -> {
+            Mat output = context.forward(face);
+            new FloatPointer(output.data()).get(embedding, 0, dimensions);
+            return null;
+        });
+
+        double norm = 0;
+        for (float value : embedding) {
+            norm += value * value;
+        }
+        float inverse = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+        for (int i = 0; i < dimensions; i++) {
+            embedding[i] *= inverse;
+        }
+    }
+
+    private <T> T execute(Function<Context, T> inference) {
+        Context context;
+        try {
+            context = available.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an embedding network", e);
+        }
+
+        try {
+            return inference.apply(context);
+        } finally {
+            available.add(context);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        contexts.forEach(context -> {
+            memoryTracker.release(context.blob);
+            context.close();
+        });
+        contexts.clear();
+        available.clear();
+    }
+
+    // Files are looked up on disk first and then on the classpath
+    private static String resolve(String location) {
+        if (Files.exists(Path.of(location))) {
+            return location;
+        }
+        URL resource = ClassLoader.getSystemResource(location);
+        if (resource == null) {
+            throw new IllegalStateException("Face embedding model file not found: " + location
+                    + ". recognition.backend EMBEDDING needs a face embedding network, e.g. OpenCV zoo's SFace"
+                    + " (face_recognition_sface_2021dec.onnx), set recognition.embedding.model to its path");
+        }
+        try {
+            return Path.of(resource.toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException("Could not read model file " + location, e);
+        }
+    }
+
+    private class Context implements AutoCloseable {
+        private final Net net;
+        private final Mat blob = new Mat();
+        private final MatVector outputs = new MatVector();
+        private final Size inputSize = new Size(properties.getInputWidth(), properties.getInputHeight());
+        private final Scalar mean = Scalar.all(properties.getMean());
+
+        private Context(Net net) {
+            this.net = net;
+        }
+
+        private Mat forward(Mat face) {
+            blobFromImage(face, blob, properties.getScale(), inputSize, mean, properties.isSwapRb(), false, CV_32F);
+            net.setInput(blob);
+            net.forward(outputs);
+            return outputs.get(0);
+        }
+
+        @Override
+        public void close() {
+            outputs.resize(0);
+            blob.release();
+            outputs.close();
+            inputSize.close();
+            mean.close();
+            net.close();
+        }
+    }
+}
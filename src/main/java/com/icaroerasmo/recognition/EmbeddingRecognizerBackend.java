@@ -0,0 +1,97 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import lombok.RequiredArgsConstructor;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enrolls faces as embeddings of the network in {@link EmbeddingNetPool}
+ * and matches them with {@link EmbeddingModel}. Updating only appends the
+ * embeddings of the new faces to the stored ones.
+ */
+@Component
+@ConditionalOnProperty(name = "recognition.backend", havingValue = "EMBEDDING")
+@RequiredArgsConstructor
+public class EmbeddingRecognizerBackend implements FaceRecognizerBackend {
+
+    private static final Path MODEL = Paths.get("trained_embeddings.bin");
+
+    private final RecognitionProperties properties;
+    private final EmbeddingNetPool netPool;
+
+    @Override
+    public RecognitionBackend getType() {
+        return RecognitionBackend.EMBEDDING;
+    }
+
+    @Override
+    public boolean isTrained() {
+        return Files.exists(MODEL);
+    }
+
+    @Override
+    public FaceRecognitionModel load() throws IOException {
+        return new EmbeddingModel(EmbeddingModelFile.read(MODEL), getThreshold(), netPool,
+                EmbeddingScorer.create(properties.isVectorized()));
+    }
+
+    @Override
+    public double getThreshold() {
+        return properties.getEmbedding().getThreshold();
+    }
+
+    @Override
+    public Trainer trainer(boolean update) throws IOException {
+        return new EmbeddingTrainer(update ? EmbeddingModelFile.read(MODEL) : null);
+    }
+
+    private class EmbeddingTrainer implements Trainer {
+
+        private final int dimensions = netPool.getDimensions();
+        private int[] labels;
+        private float[] vectors;
+        private int count;
+
+        private EmbeddingTrainer(EmbeddingModelFile.Contents previous) {
+            if (previous != null && previous.count() > 0 && previous.dimensions() != dimensions) {
+                throw new IllegalStateException("Stored embeddings have " + previous.dimensions() +
+                        " dimensions but the network produces " + dimensions + ", a full training is needed");
+            }
+            this.count = previous == null ? 0 : previous.count();
+            this.labels = previous == null ? new int[64] : Arrays.copyOf(previous.labels(), Math.max(64, count * 2));
+            this.vectors = previous == null ? new float[64 * dimensions]
+                    : Arrays.copyOf(previous.vectors(), labels.length * dimensions);
+        }
+
+        @Override
+        public void add(Mat face, int label) {
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                vectors = Arrays.copyOf(vectors, labels.length * dimensions);
+            }
+            float[] embedding = netPool.embed(face);
+            System.arraycopy(embedding, 0, vectors, count * dimensions, dimensions);
+            labels[count++] = label;
+        }
+
+        @Override
+        public void save(List<String> personNames) throws IOException {
+            EmbeddingModelFile.write(MODEL, new EmbeddingModelFile.Contents(dimensions,
+                    Arrays.copyOf(labels, count), personNames, Arrays.copyOf(vectors, count * dimensions)));
+        }
+
+        @Override
+        public void close() {
+            // Heap only
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.icaroerasmo.recognition;
+
+/**
+ * Dot product of a query embedding with one row of a gallery matrix. For
+ * L2 normalized embeddings it is their cosine similarity.
+ */
+public interface EmbeddingScorer {
+
+    float dot(float[] query, float[] matrix, int offset, int length);
+
+    // Same rules as the LBPH histogram scorers, SIMD only when the incubator module was added to the JVM
+    static EmbeddingScorer create(boolean vectorized) {
+        if (vectorized && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return new VectorEmbeddingScorer();
+        }
+        return new ScalarEmbeddingScorer();
+    }
+}
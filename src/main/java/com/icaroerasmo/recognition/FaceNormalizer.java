@@ -0,0 +1,165 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.utils.MemorySubsystem;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.springframework.stereotype.Component;
+
+import java.nio.DoubleBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.bytedeco.opencv.global.opencv_core.BORDER_REPLICATE;
+import static org.bytedeco.opencv.global.opencv_core.CV_64F;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Turns a detected face box into the fixed size crop the recognizer
+ * expects: grayscale at {@code recognition.face} size for LBPH, colour at
+ * the network input size for embeddings. Training and recognition both go
+ * through it, so the gallery and the probes are always prepared the same way.
+ * <p>
+ * The box is grown by the configured padding and scaled to the output size
+ * before the grayscale conversion, so the cost per face stays about the
+ * same whatever the box size. Boxes crossing the frame border go through an
+ * affine warp that fills the missing part by replicating the edge pixels,
+ * keeping their aspect instead of being cut or failing.
+ */
+@Log4j2
+@Component
+public class FaceNormalizer {
+
+    @Getter
+    private final Size size;
+    @Getter
+    private final boolean grayscale;
+    private final RecognitionProperties.Face properties;
+    private final NativeMemoryTracker memoryTracker;
+
+    private final Queue<Buffers> allBuffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(this::newBuffers);
+
+    public FaceNormalizer(RecognitionProperties properties, NativeMemoryTracker memoryTracker) {
+        this.properties = properties.getFace();
+        this.memoryTracker = memoryTracker;
+        this.grayscale = properties.getBackend() != RecognitionBackend.EMBEDDING;
+        this.size = grayscale ? new Size(this.properties.getWidth(), this.properties.getHeight())
+                : new Size(properties.getEmbedding().getInputWidth(), properties.getEmbedding().getInputHeight());
+    }
+
+    /**
+     * Normalizes the face into a buffer owned by the calling thread and
+     * returns it, or null when the box does not overlap the image. The buffer
+     * must not be released and is overwritten by the next call on the same
+     * thread.
+     */
+    public Mat normalize(Mat image, Rect box) {
+        Buffers b = buffers.get();
+        Mat target = grayscale ? b.gray : b.color;
+        return normalize(image, box, b, target) ? target : null;
+    }
+
+    // Same as normalize but into a new Mat owned by the caller, for crops that outlive the call
+    public Mat normalizeCopy(Mat image, Rect box) {
+        try (Buffers b = new Buffers()) {
+            Mat face = new Mat();
+            if (!normalize(image, box, b, face)) {
+                face.close();
+                return null;
+            }
+            return face;
+        }
+    }
+
+    private boolean normalize(Mat image, Rect box, Buffers b, Mat target) {
+
+        double padX = box.width() * properties.getPadding();
+        double padY = box.height() * properties.getPadding();
+        double x = box.x() - padX, y = box.y() - padY;
+        double w = box.width() + 2 * padX, h = box.height() + 2 * padY;
+
+        // Nothing of the face is inside the image
+        if (w <= 0 || h <= 0 || x >= image.cols() || y >= image.rows() || x + w <= 0 || y + h <= 0) {
+            log.debug("Ignoring face box {}x{} at {},{} outside of the {}x{} image",
+                    box.width(), box.height(), box.x(), box.y(), image.cols(), image.rows());
+            return false;
+        }
+
+        // Scaled straight into the target when no conversion is needed
+        boolean sameChannels = (image.channels() == 1) == grayscale;
+        Mat scaled = sameChannels ? target : b.color;
+
+        int left = (int) Math.round(x), top = (int) Math.round(y);
+        int right = (int) Math.round(x + w), bottom = (int) Math.round(y + h);
+
+        if (left >= 0 && top >= 0 && right <= image.cols() && bottom <= image.rows() && right > left && bottom > top) {
+            // Common case, resize only reads the pixels it samples from the region
+            try (Rect inside = new Rect(left, top, right - left, bottom - top); Mat roi = new Mat(image, inside)) {
+                resize(roi, scaled, size, 0, 0, INTER_LINEAR);
+            }
+        } else {
+            double sx = size.width() / w, sy = size.height() / h;
+            // Same pixel center convention as resize, so both paths give the same crop
+            b.transformValues.put(0, sx).put(1, 0).put(2, 0.5 * sx - 0.5 - x * sx)
+                    .put(3, 0).put(4, sy).put(5, 0.5 * sy - 0.5 - y * sy);
+            warpAffine(image, scaled, b.transform, size, INTER_LINEAR, BORDER_REPLICATE, b.borderValue);
+        }
+
+        if (!sameChannels) {
+            cvtColor(scaled, target, grayscale ? COLOR_RGB2GRAY : COLOR_GRAY2BGR);
+        }
+
+        if (properties.isEqualize() && grayscale) {
+            equalizeHist(target, target);
+        }
+
+        return true;
+    }
+
+    private Buffers newBuffers() {
+        Buffers b = new Buffers();
+        memoryTracker.trackResident(MemorySubsystem.RECOGNIZE, b.color);
+        memoryTracker.trackResident(MemorySubsystem.RECOGNIZE, b.gray);
+        allBuffers.add(b);
+        return b;
+    }
+
+    @PreDestroy
+    public void close() {
+        Buffers b;
+        while ((b = allBuffers.poll()) != null) {
+            memoryTracker.release(b.color);
+            memoryTracker.release(b.gray);
+            b.close();
+        }
+    }
+
+    // Scratch Mats of one thread, allocated at the output size once and reused for every face
+    private class Buffers implements AutoCloseable {
+        private final Mat color = new Mat(size.height(), size.width(), CV_8UC3);
+        private final Mat gray = new Mat(size.height(), size.width(), CV_8UC1);
+        private final Mat transform = new Mat(2, 3, CV_64F);
+        private final DoubleBuffer transformValues = transform.createBuffer();
+        private final Scalar borderValue = new Scalar();
+
+        @Override
+        public void close() {
+            color.release();
+            gray.release();
+            transform.release();
+            color.close();
+            gray.close();
+            transform.close();
+            borderValue.close();
+        }
+    }
+}
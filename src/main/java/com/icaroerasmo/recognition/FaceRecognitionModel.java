@@ -0,0 +1,25 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.model.Prediction;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.List;
+
+/**
+ * A trained gallery able to tell who a face belongs to. Faces are expected
+ * to be crops prepared by {@link FaceNormalizer} the same way as the training
+ * images: grayscale for LBPH, colour at the network input size for embeddings.
+ * Implementations must allow concurrent calls to {@link #predict(Mat)}.
+ */
+public interface FaceRecognitionModel extends AutoCloseable {
+
+    Prediction predict(Mat face);
+
+    // Up to k closest people, nearest first
+    default List<Prediction> predict(Mat face, int k) {
+        return List.of(predict(face));
+    }
+
+    @Override
+    void close();
+}
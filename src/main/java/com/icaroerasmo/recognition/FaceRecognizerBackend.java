@@ -0,0 +1,41 @@
+package com.icaroerasmo.recognition;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Trains and loads the {@link FaceRecognitionModel} of one recognition
+ * technique. The active backend is picked by {@code recognition.backend};
+ * faces handed to it are prepared by {@link FaceNormalizer}.
+ */
+public interface FaceRecognizerBackend {
+
+    RecognitionBackend getType();
+
+    boolean isTrained();
+
+    FaceRecognitionModel load() throws IOException;
+
+    // Predictions farther than this are unknown faces
+    double getThreshold();
+
+    /**
+     * Starts a training session. With update the faces are added to the
+     * current model, otherwise the model is rebuilt from them alone.
+     */
+    Trainer trainer(boolean update) throws IOException;
+
+    interface Trainer extends AutoCloseable {
+
+        // The face is copied or consumed right away, the caller keeps ownership of it
+        void add(Mat face, int label);
+
+        // Writes the model, personNames being indexed by label
+        void save(List<String> personNames) throws IOException;
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,19 @@
+package com.icaroerasmo.recognition;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Chi-square distance between two histograms, with the same definition as
+ * OpenCV's HISTCMP_CHISQR_ALT. Scoring gives up and returns
+ * {@link Double#POSITIVE_INFINITY} as soon as the partial sum exceeds
+ * {@code bound}, since the remaining terms can only make it larger.
+ */
+public interface HistogramScorer {
+
+    double DBL_EPSILON = 2.220446049250313e-16;
+
+    double chiSquare(float[] query, float[] stored, int length, double bound);
+
+    // Scores the histogram starting at offset of a mapped model without copying it to the heap first
+    double chiSquare(float[] query, FloatBuffer stored, int offset, int length, double bound);
+}
@@ -0,0 +1,163 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.model.Prediction;
+import lombok.Getter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * LBPH model backed by a memory mapped {@link LbphModelFile}. Histograms are
+ * read straight from the page cache and never copied to the heap; files
+ * larger than 2GB are mapped in several chunks made of whole histograms.
+ * <p>
+ * Prediction computes the LBPH histogram of the face with
+ * {@link LbphHistogram} and lets {@link LbphSearchEngine} find the nearest
+ * stored histograms by chi-square distance, the same metric used by OpenCV's
+ * LBPHFaceRecognizer.
+ */
+@Getter
+public class LbphBinaryModel implements FaceRecognitionModel {
+
+    private final int radius;
+    private final int neighbors;
+    private final int gridX;
+    private final int gridY;
+    private final double threshold;
+    private final int count;
+    private final int dimensions;
+    private final int histogramsPerChunk;
+    private final int[] labels;
+    private final List<String> personNames;
+    private FloatBuffer[] chunks;
+    private final LbphSearchEngine searchEngine;
+
+    private LbphBinaryModel(int radius, int neighbors, int gridX, int gridY, double threshold, int count,
+                            int dimensions, int histogramsPerChunk, int[] labels, List<String> personNames,
+                            FloatBuffer[] chunks, LbphSearchEngine searchEngine) {
+        this.radius = radius;
+        this.neighbors = neighbors;
+        this.gridX = gridX;
+        this.gridY = gridY;
+        this.threshold = threshold;
+        this.count = count;
+        this.dimensions = dimensions;
+        this.histogramsPerChunk = histogramsPerChunk;
+        this.labels = labels;
+        this.personNames = personNames;
+        this.chunks = chunks;
+        this.searchEngine = searchEngine;
+    }
+
+    public static LbphBinaryModel open(Path file, LbphSearchEngine searchEngine) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, LbphModelFile.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getInt(0) != LbphModelFile.MAGIC || header.getInt(4) != LbphModelFile.VERSION) {
+                throw new IOException("Not a binary LBPH model: " + file);
+            }
+
+            int radius = header.getInt(8);
+            int neighbors = header.getInt(12);
+            int gridX = header.getInt(16);
+            int gridY = header.getInt(20);
+            double threshold = header.getDouble(24);
+            int count = header.getInt(32);
+            int dimensions = header.getInt(36);
+            int labelCount = header.getInt(40);
+            long labelTableOffset = header.getLong(48);
+            long histogramsOffset = header.getLong(56);
+
+            MappedByteBuffer metadata = channel.map(FileChannel.MapMode.READ_ONLY, 0, histogramsOffset);
+            metadata.order(ByteOrder.LITTLE_ENDIAN);
+
+            int[] labels = new int[count];
+            metadata.position(LbphModelFile.HEADER_SIZE);
+            metadata.asIntBuffer().get(labels);
+
+            List<String> personNames = new ArrayList<>(labelCount);
+            metadata.position((int) labelTableOffset);
+            for (int i = 0; i < labelCount; i++) {
+                int label = metadata.getInt();
+                byte[] name = new byte[metadata.getInt()];
+                metadata.get(name);
+                while (personNames.size() <= label) {
+                    personNames.add(null);
+                }
+                personNames.set(label, new String(name, UTF_8));
+            }
+
+            long histogramBytes = (long) dimensions * Float.BYTES;
+            int histogramsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / Math.max(1, histogramBytes));
+            int chunkCount = count == 0 ? 0 : (count + histogramsPerChunk - 1) / histogramsPerChunk;
+
+            FloatBuffer[] chunks = new FloatBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                int histograms = Math.min(histogramsPerChunk, count - c * histogramsPerChunk);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        histogramsOffset + c * histogramsPerChunk * histogramBytes, histograms * histogramBytes);
+                chunks[c] = chunk.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+
+            return new LbphBinaryModel(radius, neighbors, gridX, gridY, threshold, count, dimensions,
+                    histogramsPerChunk, labels, personNames, chunks, searchEngine);
+        }
+    }
+
+    // View over the i-th stored histogram, backed by the mapped file
+    public FloatBuffer histogram(int i) {
+        return chunk(i).slice(offset(i), dimensions);
+    }
+
+    // Mapped chunk holding the i-th histogram, which starts at offset(i)
+    public FloatBuffer chunk(int i) {
+        return chunks[i / histogramsPerChunk];
+    }
+
+    public int offset(int i) {
+        return (i % histogramsPerChunk) * dimensions;
+    }
+
+    public float[] histogramOf(Mat face) {
+        return LbphHistogram.compute(face, radius, neighbors, gridX, gridY);
+    }
+
+    @Override
+    public Prediction predict(Mat face) {
+        List<Prediction> predictions = predict(face, 1);
+        return predictions.isEmpty() ? new Prediction(-1, null, Double.MAX_VALUE) : predictions.get(0);
+    }
+
+    @Override
+    public List<Prediction> predict(Mat face, int k) {
+        TopK topK = searchEngine.search(this, histogramOf(face), k);
+
+        List<Prediction> predictions = new ArrayList<>(topK.getSize());
+        for (int i = 0; i < topK.getSize(); i++) {
+            predictions.add(new Prediction(topK.label(i), personName(topK.label(i)), topK.distance(i)));
+        }
+        return predictions;
+    }
+
+    public String personName(int label) {
+        return label >= 0 && label < personNames.size() ? personNames.get(label) : null;
+    }
+
+    @Override
+    public void close() {
+        // Mapped buffers are unmapped once they become unreachable
+        chunks = new FloatBuffer[0];
+    }
+}
@@ -0,0 +1,104 @@
+package com.icaroerasmo.recognition;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.Arrays;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+
+/**
+ * Java port of the extended local binary pattern operator and spatial
+ * histogram used by OpenCV's LBPHFaceRecognizer, so histograms computed here
+ * can be compared with the ones stored by OpenCV.
+ */
+public final class LbphHistogram {
+
+    private static final float FLT_EPSILON = Math.ulp(1.0f);
+
+    private LbphHistogram() {
+    }
+
+    public static int dimensions(int neighbors, int gridX, int gridY) {
+        return gridX * gridY * (1 << neighbors);
+    }
+
+    public static float[] compute(Mat face, int radius, int neighbors, int gridX, int gridY) {
+        if (face.type() != CV_8UC1 || !face.isContinuous()) {
+            throw new IllegalArgumentException("Expected a continuous single channel 8 bit image");
+        }
+
+        int rows = face.rows(), cols = face.cols();
+        byte[] pixels = new byte[rows * cols];
+        face.data().get(pixels);
+
+        return compute(pixels, rows, cols, radius, neighbors, gridX, gridY);
+    }
+
+    public static float[] compute(byte[] pixels, int rows, int cols, int radius, int neighbors, int gridX, int gridY) {
+        int lbpRows = rows - 2 * radius;
+        int lbpCols = cols - 2 * radius;
+        int[] lbp = new int[Math.max(0, lbpRows * lbpCols)];
+
+        for (int n = 0; n < neighbors; n++) {
+            float x = (float) (radius * Math.cos(2.0 * Math.PI * n / (float) neighbors));
+            float y = (float) (-radius * Math.sin(2.0 * Math.PI * n / (float) neighbors));
+            int fx = (int) Math.floor(x);
+            int fy = (int) Math.floor(y);
+            int cx = (int) Math.ceil(x);
+            int cy = (int) Math.ceil(y);
+            float ty = y - fy;
+            float tx = x - fx;
+            float w1 = (1 - tx) * (1 - ty);
+            float w2 = tx * (1 - ty);
+            float w3 = (1 - tx) * ty;
+            float w4 = tx * ty;
+
+            for (int i = radius; i < rows - radius; i++) {
+                for (int j = radius; j < cols - radius; j++) {
+                    float t = w1 * pixel(pixels, cols, i + fy, j + fx) + w2 * pixel(pixels, cols, i + fy, j + cx)
+                            + w3 * pixel(pixels, cols, i + cy, j + fx) + w4 * pixel(pixels, cols, i + cy, j + cx);
+                    int center = pixel(pixels, cols, i, j);
+                    if (t > center || Math.abs(t - center) < FLT_EPSILON) {
+                        lbp[(i - radius) * lbpCols + (j - radius)] += 1 << n;
+                    }
+                }
+            }
+        }
+
+        int patterns = 1 << neighbors;
+        float[] histogram = new float[dimensions(neighbors, gridX, gridY)];
+
+        if (lbp.length == 0) {
+            return histogram;
+        }
+
+        int width = lbpCols / gridX;
+        int height = lbpRows / gridY;
+        // OpenCV normalizes each cell histogram by its pixel count with single precision math
+        float scale = (float) (1.0 / (width * height));
+
+        int cell = 0;
+        int[] counts = new int[patterns];
+        for (int i = 0; i < gridY; i++) {
+            for (int j = 0; j < gridX; j++) {
+                Arrays.fill(counts, 0);
+                for (int r = i * height; r < (i + 1) * height; r++) {
+                    for (int c = j * width; c < (j + 1) * width; c++) {
+                        counts[lbp[r * lbpCols + c]]++;
+                    }
+                }
+                int offset = cell * patterns;
+                for (int p = 0; p < patterns; p++) {
+                    histogram[offset + p] = counts[p] * scale;
+                }
+                cell++;
+            }
+        }
+
+        return histogram;
+    }
+
+    private static int pixel(byte[] pixels, int cols, int row, int col) {
+        return pixels[row * cols + col] & 0xFF;
+    }
+}
@@ -0,0 +1,229 @@
+package com.icaroerasmo.recognition;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Binary, memory mappable layout of a trained LBPH model. Everything is
+ * little endian.
+ * <pre>
+ *  0  int    magic ("LBPB")
+ *  4  int    version
+ *  8  int    radius
+ * 12  int    neighbors
+ * 16  int    grid x
+ * 20  int    grid y
+ * 24  double threshold
+ * 32  int    histogram count
+ * 36  int    histogram dimensions
+ * 40  int    label table entries
+ * 44  int    reserved
+ * 48  long   label table offset
+ * 56  long   histograms offset (aligned to 64 bytes)
+ * 64  int[count] label of every histogram
+ *     label table: (int label, int length, utf-8 bytes) per entry
+ *     float32[count * dimensions] histograms, one after the other
+ * </pre>
+ */
+public final class LbphModelFile {
+
+    public static final int MAGIC = 0x4250424C;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int ALIGNMENT = 64;
+
+    private LbphModelFile() {
+    }
+
+    // Writes the histograms and label names of a trained recognizer
+    public static void write(LBPHFaceRecognizer faceRecognizer, Path target) throws IOException {
+
+        List<String> personNames = personNames(faceRecognizer);
+        MatVector histograms = faceRecognizer.getHistograms();
+        Mat labels = faceRecognizer.getLabels();
+
+        try {
+            int count = (int) histograms.size();
+            int dims = count == 0 ? LbphHistogram.dimensions(faceRecognizer.getNeighbors(),
+                    faceRecognizer.getGridX(), faceRecognizer.getGridY()) : (int) histograms.get(0).total();
+
+            int[] labelArray = new int[count];
+            IntBuffer labelsBuf = labels.createBuffer();
+            labelsBuf.get(labelArray);
+
+            write(target, faceRecognizer.getRadius(), faceRecognizer.getNeighbors(),
+                    faceRecognizer.getGridX(), faceRecognizer.getGridY(), faceRecognizer.getThreshold(),
+                    dims, labelArray, personNames, i -> histograms.get(i).createBuffer());
+        } finally {
+            labels.close();
+            histograms.close();
+        }
+    }
+
+    // Writes raw histograms, one per label, read through the given accessor
+    public static void write(Path target, int radius, int neighbors, int gridX, int gridY, double threshold,
+                             int dims, int[] labels, List<String> personNames,
+                             IntFunction<FloatBuffer> histograms) throws IOException {
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            writeFully(channel, metadata(radius, neighbors, gridX, gridY, threshold, dims, labels, personNames));
+            writeHistograms(channel, dims, labels.length, histograms);
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds histograms to an existing model. The stored histograms are copied
+     * file to file without being decoded, only the labels and the label
+     * table in front of them are rewritten.
+     */
+    public static void append(Path target, int[] labels, List<String> personNames,
+                              IntFunction<FloatBuffer> histograms) throws IOException {
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel source = FileChannel.open(target, READ);
+             FileChannel channel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(source, header, 0);
+
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a binary LBPH model: " + target);
+            }
+
+            int count = header.getInt(32);
+            int dims = header.getInt(36);
+            long histogramsOffset = header.getLong(56);
+
+            ByteBuffer stored = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(source, stored, HEADER_SIZE);
+            int[] allLabels = new int[count + labels.length];
+            stored.asIntBuffer().get(allLabels, 0, count);
+            System.arraycopy(labels, 0, allLabels, count, labels.length);
+
+            writeFully(channel, metadata(header.getInt(8), header.getInt(12), header.getInt(16), header.getInt(20),
+                    header.getDouble(24), dims, allLabels, personNames));
+
+            long bytes = (long) count * dims * Float.BYTES;
+            for (long copied = 0; copied < bytes; ) {
+                copied += source.transferTo(histogramsOffset + copied, bytes - copied, channel);
+            }
+
+            writeHistograms(channel, dims, labels.length, histograms);
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Header, labels and label table, padded up to the first histogram
+    private static ByteBuffer metadata(int radius, int neighbors, int gridX, int gridY, double threshold,
+                                       int dims, int[] labels, List<String> personNames) {
+
+        int count = labels.length;
+        byte[][] names = personNames.stream().map(name -> name.getBytes(UTF_8)).toArray(byte[][]::new);
+
+        long labelTableOffset = HEADER_SIZE + 4L * count;
+        long labelTableSize = 0;
+        for (byte[] name : names) {
+            labelTableSize += 8 + name.length;
+        }
+        long histogramsOffset = align(labelTableOffset + labelTableSize);
+
+        ByteBuffer metadata = ByteBuffer.allocate((int) histogramsOffset).order(ByteOrder.LITTLE_ENDIAN);
+        metadata.putInt(MAGIC).putInt(VERSION)
+                .putInt(radius).putInt(neighbors)
+                .putInt(gridX).putInt(gridY)
+                .putDouble(threshold)
+                .putInt(count).putInt(dims).putInt(names.length).putInt(0)
+                .putLong(labelTableOffset).putLong(histogramsOffset);
+
+        for (int label : labels) {
+            metadata.putInt(label);
+        }
+        for (int i = 0; i < names.length; i++) {
+            metadata.putInt(i).putInt(names[i].length).put(names[i]);
+        }
+        metadata.position(0);
+        return metadata;
+    }
+
+    private static void writeHistograms(FileChannel channel, int dims, int count,
+                                        IntFunction<FloatBuffer> histograms) throws IOException {
+        ByteBuffer histogram = ByteBuffer.allocate(dims * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            histogram.clear();
+            histogram.asFloatBuffer().put(histograms.apply(i).limit(dims));
+            histogram.limit(dims * Float.BYTES);
+            writeFully(channel, histogram);
+        }
+    }
+
+    /**
+     * Converts an LBPH model saved by OpenCV (trained_dataset.xml) to the
+     * binary layout.
+     */
+    public static void convert(Path xml, Path target) throws IOException {
+        try (LBPHFaceRecognizer faceRecognizer = LBPHFaceRecognizer.create()) {
+            faceRecognizer.read(xml.toString());
+            write(faceRecognizer, target);
+        }
+    }
+
+    // Person names indexed by label, as reported by the recognizer
+    private static List<String> personNames(LBPHFaceRecognizer faceRecognizer) {
+        Mat labels = faceRecognizer.getLabels();
+        int maxLabel = -1;
+        IntBuffer labelsBuf = labels.createBuffer();
+        for (int i = 0; i < labels.rows(); i++) {
+            maxLabel = Math.max(maxLabel, labelsBuf.get(i));
+        }
+        labels.close();
+
+        List<String> personNames = new ArrayList<>();
+        for (int label = 0; label <= maxLabel; label++) {
+            String info = faceRecognizer.getLabelInfo(label).getString();
+            personNames.add(info.isEmpty() ? "" : info.substring(0, info.length() - 1)); // Remove the last character which is a space
+        }
+        return personNames;
+    }
+
+    static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated binary LBPH model");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
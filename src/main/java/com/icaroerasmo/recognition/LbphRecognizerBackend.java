@@ -0,0 +1,179 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.utils.MatUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.bytedeco.opencv.global.opencv_core.CV_32SC1;
+
+/**
+ * Trains with OpenCV's {@link LBPHFaceRecognizer} and serves predictions from
+ * the memory mapped {@link LbphBinaryModel}, which is the source of truth.
+ * Updates compute the histograms of the new faces with {@link LbphHistogram}
+ * and append them to the binary model. The XML dataset written by a full
+ * training is only read to rebuild a missing binary model, so updates delete
+ * it once it is out of date.
+ */
+@Log4j2
+@Component
+@ConditionalOnProperty(name = "recognition.backend", havingValue = "LBPH", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LbphRecognizerBackend implements FaceRecognizerBackend {
+
+    private static final Path DATASET = Paths.get("trained_dataset.xml");
+    private static final Path MODEL = Paths.get("trained_dataset.bin");
+    // Chi-square distance
+    public static final double THRESHOLD = 40;
+
+    private final LbphSearchEngine lbphSearchEngine;
+    private final MatUtil matUtil;
+
+    @Override
+    public RecognitionBackend getType() {
+        return RecognitionBackend.LBPH;
+    }
+
+    @Override
+    public boolean isTrained() {
+        return Files.exists(MODEL) || Files.exists(DATASET);
+    }
+
+    // Maps the binary model, converting the OpenCV dataset first when the binary one is missing
+    @Override
+    public FaceRecognitionModel load() throws IOException {
+        if (!Files.exists(MODEL)) {
+            log.info("Converting {} to {}", DATASET, MODEL);
+            LbphModelFile.convert(DATASET, MODEL);
+        }
+        return LbphBinaryModel.open(MODEL, lbphSearchEngine);
+    }
+
+    @Override
+    public double getThreshold() {
+        return THRESHOLD;
+    }
+
+    @Override
+    public Trainer trainer(boolean update) throws IOException {
+        if (update) {
+            // load() converts a model only saved as XML
+            return new LbphUpdater((LbphBinaryModel) load());
+        }
+//        FaceRecognizer faceRecognizer = FisherFaceRecognizer.create();
+//         FaceRecognizer faceRecognizer = EigenFaceRecognizer.create();
+        return new LbphTrainer(LBPHFaceRecognizer.create());
+    }
+
+    private class LbphTrainer implements Trainer {
+
+        private final LBPHFaceRecognizer faceRecognizer;
+        private final MatVector images = new MatVector();
+        private int[] imageLabels = new int[64];
+
+        private LbphTrainer(LBPHFaceRecognizer faceRecognizer) {
+            this.faceRecognizer = faceRecognizer;
+        }
+
+        @Override
+        public void add(Mat face, int label) {
+            int index = (int) images.size();
+            if (index == imageLabels.length) {
+                imageLabels = Arrays.copyOf(imageLabels, index * 2);
+            }
+            imageLabels[index] = label;
+            // Shares the pixels of face, which stay alive until the vector is cleared
+            images.push_back(face);
+        }
+
+        @Override
+        public void save(List<String> personNames) throws IOException {
+            if (images.size() == 0) {
+                // OpenCV refuses to train without images, a model that matches nobody replaces the old one
+                log.warn("No faces to train with, writing an empty model");
+                LbphModelFile.write(MODEL, faceRecognizer.getRadius(), faceRecognizer.getNeighbors(),
+                        faceRecognizer.getGridX(), faceRecognizer.getGridY(), faceRecognizer.getThreshold(),
+                        LbphHistogram.dimensions(faceRecognizer.getNeighbors(), faceRecognizer.getGridX(),
+                                faceRecognizer.getGridY()), new int[0], personNames, i -> null);
+                Files.deleteIfExists(DATASET);
+                return;
+            }
+
+            Mat labels = new Mat((int) images.size(), 1, CV_32SC1);
+            IntBuffer labelsBuf = labels.createBuffer();
+            labelsBuf.put(imageLabels, 0, (int) images.size());
+
+            faceRecognizer.train(images, labels);
+
+            for (int i = 0; i < personNames.size(); i++) {
+                faceRecognizer.setLabelInfo(i, new String(personNames.get(i).getBytes(UTF_8)));
+            }
+
+            faceRecognizer.write(DATASET.toString());
+            LbphModelFile.write(faceRecognizer, MODEL);
+
+            matUtil.releaseResources(labels);
+        }
+
+        @Override
+        public void close() {
+            matUtil.clearMatVector(images);
+            faceRecognizer.close();
+        }
+    }
+
+    private class LbphUpdater implements Trainer {
+
+        private final LbphBinaryModel model;
+        private final List<float[]> histograms = new ArrayList<>();
+        private int[] imageLabels = new int[64];
+
+        private LbphUpdater(LbphBinaryModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public void add(Mat face, int label) {
+            int index = histograms.size();
+            if (index == imageLabels.length) {
+                imageLabels = Arrays.copyOf(imageLabels, index * 2);
+            }
+            imageLabels[index] = label;
+            histograms.add(model.histogramOf(face));
+        }
+
+        @Override
+        public void save(List<String> personNames) throws IOException {
+            if (histograms.isEmpty()) {
+                return;
+            }
+
+            LbphModelFile.append(MODEL, Arrays.copyOf(imageLabels, histograms.size()), personNames,
+                    i -> FloatBuffer.wrap(histograms.get(i)));
+
+            if (Files.deleteIfExists(DATASET)) {
+                log.info("Deleted {}, {} is the only up to date model", DATASET, MODEL);
+            }
+        }
+
+        @Override
+        public void close() {
+            model.close();
+        }
+    }
+}
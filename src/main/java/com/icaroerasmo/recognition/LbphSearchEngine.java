@@ -0,0 +1,110 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nearest neighbour search over the histograms of an {@link LbphBinaryModel}.
+ * Large galleries are split in partitions scanned in parallel; every
+ * partition keeps its own top-K, which are merged at the end. A histogram
+ * stops being scored as soon as it can no longer enter the top-K.
+ */
+@Log4j2
+@Component
+public class LbphSearchEngine {
+
+    @Getter
+    private final HistogramScorer scorer;
+    private final RecognitionProperties properties;
+    private final ExecutorService executor;
+
+    public LbphSearchEngine(RecognitionProperties properties) {
+        this.properties = properties;
+        this.scorer = createScorer(properties.isVectorized());
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getSearchThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "lbph-search-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("LBPH search uses {}", scorer.getClass().getSimpleName());
+    }
+
+    /**
+     * Returns up to k (label, distance) pairs, closest first, with at most one
+     * entry per label. Only distances below the model threshold are kept.
+     */
+    public TopK search(LbphBinaryModel model, float[] query, int k) {
+
+        int count = model.getCount();
+        int partitions = Math.max(1, Math.min(properties.getSearchThreads(),
+                count / Math.max(1, properties.getMinHistogramsPerTask())));
+
+        if (partitions == 1) {
+            return scan(model, query, k, 0, count);
+        }
+
+        int size = (count + partitions - 1) / partitions;
+        List<Future<TopK>> futures = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            int from = p * size;
+            int to = Math.min(count, from + size);
+            futures.add(executor.submit(() -> scan(model, query, k, from, to)));
+        }
+
+        TopK result = new TopK(k, model.getThreshold());
+        try {
+            for (Future<TopK> future : futures) {
+                result.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Interrupted while searching the gallery", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error searching the gallery", e.getCause());
+        }
+
+        return result;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private TopK scan(LbphBinaryModel model, float[] query, int k, int from, int to) {
+        int dims = model.getDimensions();
+        int[] labels = model.getLabels();
+        TopK topK = new TopK(k, model.getThreshold());
+
+        for (int i = from; i < to; i++) {
+            // scored in place, straight from the mapped chunk
+            double distance = scorer.chiSquare(query, model.chunk(i), model.offset(i), dims, topK.bound());
+            topK.offer(labels[i], distance);
+        }
+
+        return topK;
+    }
+
+    private static HistogramScorer createScorer(boolean vectorized) {
+        if (vectorized && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return new VectorHistogramScorer();
+        }
+        if (vectorized) {
+            log.info("jdk.incubator.vector is not available, start the JVM with --add-modules jdk.incubator.vector to enable SIMD scoring");
+        }
+        return new ScalarHistogramScorer();
+    }
+}
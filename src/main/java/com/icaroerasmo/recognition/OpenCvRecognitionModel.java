@@ -0,0 +1,33 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.model.Prediction;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_face.FaceRecognizer;
+
+// Delegates to one of OpenCV's face recognizers
+@RequiredArgsConstructor
+public class OpenCvRecognitionModel implements FaceRecognitionModel {
+
+    @Getter
+    private final FaceRecognizer faceRecognizer;
+
+    @Override
+    public Prediction predict(Mat face) {
+        int[] label = new int[1];
+        double[] confidence = new double[1];
+
+        faceRecognizer.predict(face, label, confidence);
+
+        String info = faceRecognizer.getLabelInfo(label[0]).getString();
+        String personName = info.substring(0, info.length() - 1); // Remove the last character which is a space
+
+        return new Prediction(label[0], personName, confidence[0]);
+    }
+
+    @Override
+    public void close() {
+        faceRecognizer.close();
+    }
+}
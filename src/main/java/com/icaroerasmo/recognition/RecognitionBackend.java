@@ -0,0 +1,8 @@
+package com.icaroerasmo.recognition;
+
+public enum RecognitionBackend {
+    // Local binary pattern histograms compared by chi-square distance
+    LBPH,
+    // Vectors of a face embedding network compared by cosine similarity
+    EMBEDDING
+}
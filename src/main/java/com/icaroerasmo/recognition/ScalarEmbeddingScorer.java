@@ -0,0 +1,21 @@
+package com.icaroerasmo.recognition;
+
+public class ScalarEmbeddingScorer implements EmbeddingScorer {
+
+    // Four independent sums so the loop is not bound by the latency of a single add chain
+    @Override
+    public float dot(float[] query, float[] matrix, int offset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int j = 0;
+        for (; j + 3 < length; j += 4) {
+            s0 += query[j] * matrix[offset + j];
+            s1 += query[j + 1] * matrix[offset + j + 1];
+            s2 += query[j + 2] * matrix[offset + j + 2];
+            s3 += query[j + 3] * matrix[offset + j + 3];
+        }
+        for (; j < length; j++) {
+            s0 += query[j] * matrix[offset + j];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -0,0 +1,53 @@
+package com.icaroerasmo.recognition;
+
+import java.nio.FloatBuffer;
+
+public class ScalarHistogramScorer implements HistogramScorer {
+
+    private static final int BLOCK = 1024;
+
+    @Override
+    public double chiSquare(float[] query, float[] stored, int length, double bound) {
+        double half = bound / 2;
+        double result = 0;
+
+        for (int start = 0; start < length; start += BLOCK) {
+            int end = Math.min(length, start + BLOCK);
+            for (int j = start; j < end; j++) {
+                double a = (double) stored[j] - query[j];
+                double b = (double) stored[j] + query[j];
+                if (Math.abs(b) > DBL_EPSILON) {
+                    result += a * a / b;
+                }
+            }
+            if (result > half) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+
+        return 2 * result;
+    }
+
+    @Override
+    public double chiSquare(float[] query, FloatBuffer stored, int offset, int length, double bound) {
+        double half = bound / 2;
+        double result = 0;
+
+        for (int start = 0; start < length; start += BLOCK) {
+            int end = Math.min(length, start + BLOCK);
+            for (int j = start; j < end; j++) {
+                float value = stored.get(offset + j);
+                double a = (double) value - query[j];
+                double b = (double) value + query[j];
+                if (Math.abs(b) > DBL_EPSILON) {
+                    result += a * a / b;
+                }
+            }
+            if (result > half) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+
+        return 2 * result;
+    }
+}
@@ -0,0 +1,71 @@
+package com.icaroerasmo.recognition;
+
+import lombok.Getter;
+
+/**
+ * Closest labels found so far, sorted by distance, with at most one entry
+ * per label and only distances below the threshold. Small enough that
+ * insertion sort beats any heap.
+ */
+public class TopK {
+
+    private final int[] labels;
+    private final double[] distances;
+    private final double threshold;
+    @Getter
+    private int size;
+
+    public TopK(int k, double threshold) {
+        this.labels = new int[Math.max(1, k)];
+        this.distances = new double[Math.max(1, k)];
+        this.threshold = threshold;
+    }
+
+    public int label(int i) {
+        return labels[i];
+    }
+
+    public double distance(int i) {
+        return distances[i];
+    }
+
+    // Distance a histogram has to beat to change the result
+    double bound() {
+        return size < labels.length ? threshold : Math.min(threshold, distances[size - 1]);
+    }
+
+    void offer(int label, double distance) {
+        if (!(distance < bound())) {
+            return;
+        }
+
+        int position = size;
+        for (int i = 0; i < size; i++) {
+            if (labels[i] == label) {
+                if (distances[i] <= distance) {
+                    return;
+                }
+                position = i;
+                break;
+            }
+        }
+
+        if (position == size) {
+            position = size < labels.length ? size++ : size - 1;
+        }
+
+        while (position > 0 && distances[position - 1] > distance) {
+            labels[position] = labels[position - 1];
+            distances[position] = distances[position - 1];
+            position--;
+        }
+        labels[position] = label;
+        distances[position] = distance;
+    }
+
+    void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.labels[i], other.distances[i]);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.icaroerasmo.recognition;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of {@link EmbeddingScorer}. Needs the JVM to be
+ * started with {@code --add-modules jdk.incubator.vector}.
+ */
+public class VectorEmbeddingScorer implements EmbeddingScorer {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] query, float[] matrix, int offset, int length) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+
+        int upper = FLOATS.loopBound(length);
+        int j = 0;
+        for (; j < upper; j += FLOATS.length()) {
+            acc = FloatVector.fromArray(FLOATS, query, j).fma(FloatVector.fromArray(FLOATS, matrix, offset + j), acc);
+        }
+
+        float result = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < length; j++) {
+            result += query[j] * matrix[offset + j];
+        }
+        return result;
+    }
+}
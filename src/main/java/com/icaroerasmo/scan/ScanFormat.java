@@ -0,0 +1,20 @@
+package com.icaroerasmo.scan;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+public enum ScanFormat {
+    CSV,
+    JSONL;
+
+    public static ScanFormat of(Path output) {
+        String name = output.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return JSONL;
+        }
+        throw new IllegalArgumentException("Unsupported scan output " + output + ", expected a .csv or .jsonl file");
+    }
+}
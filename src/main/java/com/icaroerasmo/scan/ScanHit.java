@@ -0,0 +1,8 @@
+package com.icaroerasmo.scan;
+
+import java.nio.file.Path;
+
+// A face recognized at timestampMicros from the start of file
+public record ScanHit(Path file, long timestampMicros, String personName, double confidence,
+                      int x, int y, int width, int height) {
+}
@@ -0,0 +1,105 @@
+package com.icaroerasmo.scan;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append only index of the faces found by a scan, one line per face.
+ * Workers write concurrently, so lines of different segments interleave;
+ * every line carries its file and timestamp.
+ */
+public class ScanIndexWriter implements AutoCloseable {
+
+    private static final String CSV_HEADER = "file,timestamp_ms,time,person,confidence,x,y,width,height";
+
+    private final ScanFormat format;
+    private final BufferedWriter writer;
+
+    public ScanIndexWriter(Path output) throws IOException {
+        this.format = ScanFormat.of(output);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        boolean empty = !Files.exists(output) || Files.size(output) == 0;
+        this.writer = Files.newBufferedWriter(output, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (empty && format == ScanFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+        }
+    }
+
+    public synchronized void write(List<ScanHit> hits) throws IOException {
+        for (ScanHit hit : hits) {
+            writer.write(format == ScanFormat.CSV ? csv(hit) : json(hit));
+            writer.newLine();
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static String csv(ScanHit hit) {
+        return String.join(",", csvField(hit.file().toString()), Long.toString(hit.timestampMicros() / 1000),
+                time(hit.timestampMicros()), csvField(hit.personName()),
+                String.format(Locale.ROOT, "%.2f", hit.confidence()),
+                Integer.toString(hit.x()), Integer.toString(hit.y()),
+                Integer.toString(hit.width()), Integer.toString(hit.height()));
+    }
+
+    private static String json(ScanHit hit) {
+        return String.format(Locale.ROOT,
+                "{\"file\":%s,\"timestampMs\":%d,\"time\":\"%s\",\"person\":%s,\"confidence\":%.2f," +
+                        "\"box\":{\"x\":%d,\"y\":%d,\"width\":%d,\"height\":%d}}",
+                jsonString(hit.file().toString()), hit.timestampMicros() / 1000, time(hit.timestampMicros()),
+                jsonString(hit.personName()), hit.confidence(), hit.x(), hit.y(), hit.width(), hit.height());
+    }
+
+    // H:MM:SS.mmm from the start of the file
+    private static String time(long micros) {
+        long millis = micros / 1000;
+        return String.format(Locale.ROOT, "%d:%02d:%02d.%03d",
+                millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
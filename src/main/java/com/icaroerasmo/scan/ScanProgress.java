@@ -0,0 +1,50 @@
+package com.icaroerasmo.scan;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters shared by the scan workers, rates are averaged since the scan started
+@Log4j2
+@Getter
+public class ScanProgress {
+
+    private final int segments;
+    private final long startedAt = System.nanoTime();
+
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder analyzed = new LongAdder();
+    private final LongAdder faces = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    // Video time covered by the finished segments
+    private final LongAdder videoMicros = new LongAdder();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public ScanProgress(int segments) {
+        this.segments = segments;
+    }
+
+    void segmentDone(long micros) {
+        videoMicros.add(micros);
+        completed.incrementAndGet();
+    }
+
+    void segmentFailed() {
+        failed.incrementAndGet();
+        completed.incrementAndGet();
+    }
+
+    public void report(String prefix) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startedAt) / 1e9);
+        log.info("{}: {}/{} segments ({} failed), {} frames decoded ({} fps), {} analyzed ({} fps), " +
+                        "{} faces, {} hits, {}s of video ({}x realtime)",
+                prefix, completed.get(), segments, failed.get(),
+                decoded.sum(), String.format("%.1f", decoded.sum() / seconds),
+                analyzed.sum(), String.format("%.1f", analyzed.sum() / seconds),
+                faces.sum(), hits.sum(), videoMicros.sum() / 1_000_000,
+                String.format("%.1f", videoMicros.sum() / 1e6 / seconds));
+    }
+}
@@ -0,0 +1,278 @@
+package com.icaroerasmo.scan;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.config.ScanProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.MetricsSource;
+import com.icaroerasmo.metrics.MetricsWriter;
+import com.icaroerasmo.metrics.TimedStage;
+import com.icaroerasmo.model.FaceRecognition;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.service.DeepLearningFaceDetectionService;
+import com.icaroerasmo.service.FaceRecognitionService;
+import com.icaroerasmo.service.RtspFrameExtractorService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_LOG_PANIC;
+import static org.bytedeco.ffmpeg.global.avutil.av_log_set_level;
+
+/**
+ * Offline counterpart of the live pipeline for recorded footage. Every file
+ * is split into fixed length segments and the segments are decoded in
+ * parallel, each worker seeking its own grabber to the start of its
+ * segment. Sampled frames go through detection and recognition on the
+ * worker thread and the faces found are appended to the scan index as soon
+ * as they are recognized.
+ * <p>
+ * Frames are sampled on a grid anchored at the start of the file, so the
+ * result does not depend on how the file was split.
+ */
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class VideoScanner implements MetricsSource {
+
+    // Metrics label of the scan workers
+    private static final String CAMERA = "scan";
+
+    private final ScanProperties properties;
+    private final DetectionProperties detectionProperties;
+    private final RtspFrameExtractorService frameExtractorService;
+    private final DeepLearningFaceDetectionService detectionService;
+    private final FaceRecognitionService faceRecognitionService;
+    private final MetricsRegistry metricsRegistry;
+
+    // Scan in progress, or the last one
+    private volatile ScanProgress progress;
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        ScanProgress scan = progress;
+        if (scan == null) {
+            return;
+        }
+        writer.gauge("scan_segments", "Segments of the scan", scan.getSegments());
+        writer.counter("scan_segments_completed", "Segments finished, failed ones included", scan.getCompleted().get());
+        writer.counter("scan_segments_failed", "Segments that failed", scan.getFailed().get());
+        writer.counter("scan_frames_decoded", "Frames decoded by the scan", scan.getDecoded().sum());
+        writer.counter("scan_frames_analyzed", "Sampled frames run through detection", scan.getAnalyzed().sum());
+        writer.counter("scan_hits", "Faces written to the scan index", scan.getHits().sum());
+        writer.counter("scan_video_seconds", "Video time covered by the finished segments",
+                scan.getVideoMicros().sum() / 1e6);
+    }
+
+    public boolean isEnabled() {
+        return !properties.getInputs().isEmpty();
+    }
+
+    public ScanProgress scan(FaceRecognitionModel model) throws IOException, InterruptedException {
+        av_log_set_level(AV_LOG_PANIC);
+
+        List<VideoSegment> segments = new ArrayList<>();
+        for (Path file : listVideos()) {
+            segments.addAll(split(file));
+        }
+
+        Path output = Paths.get(properties.getOutput());
+        int workers = Math.max(1, properties.getWorkers());
+        log.info("Scanning {} segments with {} workers into {}", segments.size(), workers, output);
+
+        ScanProgress progress = new ScanProgress(segments.size());
+        this.progress = progress;
+        ExecutorService executor = Executors.newFixedThreadPool(workers, namedThreadFactory());
+        CompletionService<Long> completionService = new ExecutorCompletionService<>(executor);
+
+        try (ScanIndexWriter writer = new ScanIndexWriter(output)) {
+            segments.forEach(segment -> completionService.submit(() -> scan(segment, model, writer, progress)));
+
+            for (int done = 0; done < segments.size(); ) {
+                Future<Long> finished = completionService.poll(properties.getReportMillis(), TimeUnit.MILLISECONDS);
+                if (finished == null) {
+                    writer.flush();
+                    progress.report("Scan");
+                    continue;
+                }
+                done++;
+                try {
+                    progress.segmentDone(finished.get());
+                } catch (ExecutionException e) {
+                    progress.segmentFailed();
+                    log.error("Segment failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        progress.report("Scan finished");
+        return progress;
+    }
+
+    // Decodes the segment and records the faces of the sampled frames, returns the video time covered
+    private long scan(VideoSegment segment, FaceRecognitionModel model,
+                      ScanIndexWriter writer, ScanProgress progress) throws IOException {
+
+        long interval = properties.getSampleFps() > 0 ? Math.round(1_000_000 / properties.getSampleFps()) : 0;
+        long lastSlot = -1, lastTimestamp = segment.startMicros();
+
+        FFmpegFrameGrabber grabber = frameExtractorService.createGrabber(segment.file().toString(),
+                properties.getGrabber());
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+
+        try {
+            frameExtractorService.start(grabber, properties.getGrabber());
+            if (segment.startMicros() > 0) {
+                // Decodes from the previous keyframe up to the exact start
+                grabber.setTimestamp(segment.startMicros());
+            }
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Frame frame = grabber.grabImage();
+                if (frame == null) {
+                    break;
+                }
+                long timestamp = frame.timestamp;
+                if (timestamp >= segment.endMicros()) {
+                    break;
+                }
+                progress.getDecoded().increment();
+                lastTimestamp = timestamp;
+
+                if (timestamp < segment.startMicros() || frame.image == null) {
+                    continue;
+                }
+                if (interval > 0) {
+                    long slot = timestamp / interval;
+                    if (slot == lastSlot) {
+                        continue;
+                    }
+                    lastSlot = slot;
+                }
+
+                progress.getAnalyzed().increment();
+                analyze(segment.file(), timestamp, converter.convert(frame), model, writer, progress);
+            }
+        } finally {
+            converter.close();
+            try {
+                grabber.close();
+            } catch (FrameGrabber.Exception e) {
+                log.warn("Could not release grabber for {}", segment.file(), e);
+            }
+        }
+
+        long end = segment.endMicros() == Long.MAX_VALUE ? lastTimestamp : segment.endMicros();
+        return Math.max(0, end - segment.startMicros());
+    }
+
+    private void analyze(Path file, long timestamp, Mat img, FaceRecognitionModel model,
+                         ScanIndexWriter writer, ScanProgress progress) throws IOException {
+
+        long startedAt = System.nanoTime();
+        List<Rect> faces = detectionService.detect(img, properties.getTiling() != null
+                ? properties.getTiling() : detectionProperties.getTiling());
+        metricsRegistry.record(TimedStage.DETECT, CAMERA, startedAt);
+        if (faces.isEmpty()) {
+            return;
+        }
+        progress.getFaces().add(faces.size());
+
+        FaceRecognition recognition = faceRecognitionService.recognize(CAMERA, model, img, faces);
+
+        List<ScanHit> hits = new ArrayList<>();
+        for (FaceRecognition.DetectedFaces face : recognition.getFaces()) {
+            if (!properties.isIncludeUnknown() && FaceRecognitionService.UNKNOWN.equals(face.getPersonName())) {
+                continue;
+            }
+            Rect box = face.getFaceRect();
+            hits.add(new ScanHit(file, timestamp, face.getPersonName(), face.getConfidence(),
+                    box.x(), box.y(), box.width(), box.height()));
+        }
+
+        if (!hits.isEmpty()) {
+            writer.write(hits);
+            progress.getHits().add(hits.size());
+        }
+    }
+
+    // Probes the file length and cuts it into segments, files of unknown length are one segment
+    private List<VideoSegment> split(Path file) throws IOException {
+        long length;
+        FFmpegFrameGrabber grabber = frameExtractorService.createGrabber(file.toString(), properties.getGrabber());
+        try {
+            grabber.start();
+            length = grabber.getLengthInTime();
+        } finally {
+            grabber.close();
+        }
+
+        long segmentMicros = TimeUnit.SECONDS.toMicros(Math.max(1, properties.getSegmentSeconds()));
+        if (length <= 0) {
+            log.warn("Unknown length of {}, scanning it as a single segment", file);
+            return List.of(new VideoSegment(file, 0, 0, Long.MAX_VALUE));
+        }
+
+        List<VideoSegment> segments = new ArrayList<>();
+        for (long start = 0; start < length; start += segmentMicros) {
+            // The last segment is open ended, the stream may run past the length in the header
+            long end = start + segmentMicros >= length ? Long.MAX_VALUE : start + segmentMicros;
+            segments.add(new VideoSegment(file, segments.size(), start, end));
+        }
+        return segments;
+    }
+
+    private List<Path> listVideos() throws IOException {
+        List<Path> videos = new ArrayList<>();
+        for (String input : properties.getInputs()) {
+            Path path = Paths.get(input);
+            if (!Files.isDirectory(path)) {
+                videos.add(path);
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile).filter(this::isVideo).sorted().forEach(videos::add);
+            }
+        }
+        return videos;
+    }
+
+    private boolean isVideo(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return properties.getExtensions().stream().anyMatch(extension -> name.endsWith("." + extension));
+    }
+
+    private static ThreadFactory namedThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "scan-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package com.icaroerasmo.scan;
+
+import java.nio.file.Path;
+
+// Time range [startMicros, endMicros) of a video file, decoded by one worker
+public record VideoSegment(Path file, int index, long startMicros, long endMicros) {
+}
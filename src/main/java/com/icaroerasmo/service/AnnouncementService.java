@@ -0,0 +1,50 @@
+package com.icaroerasmo.service;
+
+import com.icaroerasmo.model.FaceRecognition;
+import com.icaroerasmo.notification.NotificationDispatcher;
+import com.icaroerasmo.utils.MatUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imwrite;
+
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class AnnouncementService {
+
+    private static final AtomicInteger count = new AtomicInteger(0);
+
+    private final DetectionService detectionService;
+    private final NotificationDispatcher notificationDispatcher;
+    private final MatUtil matUtil;
+
+    public void announce(String camera, FaceRecognition faceRecognition) {
+
+        if (faceRecognition.getFaces() == null || faceRecognition.getFaces().isEmpty()) {
+            log.debug("No faces detected in the image.");
+            return;
+        }
+
+        var img = faceRecognition.getDetectionImg();
+
+        faceRecognition.getFaces().forEach(output -> {
+            String label = output.getPersonName();
+            Double confidence = output.getConfidence();
+            if (label != null && output.getFaceRect() != null) {
+                matUtil.drawRectangleAndName(img, label, output.getFaceRect());
+                if (detectionService.shouldAnnounceDetection(camera, label)) {
+                    String filename = String.format("%s_%s_%d.jpg",
+                            camera, label, count.getAndIncrement());
+                    imwrite(filename, img);
+                    log.info("Pessoa detectada em {}: {} (confiança: {})",
+                            camera, label, confidence);
+                    notificationDispatcher.notify(camera, label, confidence, img);
+                }
+            }
+        });
+    }
+}
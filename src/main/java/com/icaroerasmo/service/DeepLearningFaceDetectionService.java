@@ -1,15 +1,16 @@
 package com.icaroerasmo.service;
 
-import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.TimedStage;
 import lombok.RequiredArgsConstructor;
-import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.IntPointer;
 
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.opencv_dnn.*;
 import org.springframework.stereotype.Service;
 
-import java.net.URISyntaxException;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -43,72 +44,273 @@ import static org.bytedeco.opencv.global.opencv_imgproc.*;
 public class DeepLearningFaceDetectionService {
 
     public static final int MODEL_INPUT_SIZE = 300;
-    private static final String PROTO_FILE = "opencv/deploy.prototxt";
-    private static final String CAFFE_MODEL_FILE = "opencv/res10_300x300_ssd_iter_140000.caffemodel";
-    private static Net net = null;
+    public static final int MAX_DETECTIONS = 200; // keep_top_k of the SSD detection output layer
+    private static final float CONFIDENCE_THRESHOLD = .6f;
 
-    private final MatUtil matUtil;
+    private final FaceDetectionNetPool netPool;
+    private final MetricsRegistry metricsRegistry;
 
-    static {
+    public List<Rect> detect(Mat testImage) {//detect faces and draw a blue rectangle arroung each face
         try {
-            net = readNetFromCaffe(Path.of(ClassLoader.getSystemResource(PROTO_FILE).toURI()).toString(),
-                    Path.of(ClassLoader.getSystemResource(CAFFE_MODEL_FILE).toURI()).toString());
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
+            return netPool.execute(context -> {
+                int[] boxes = context.boxes(MAX_DETECTIONS);
+                return toRects(boxes, detect(context, testImage, boxes));
+            });
+        } catch (Exception e) {
+            throw new RuntimeException("Error during face detection", e);
         }
     }
 
-    public List<Rect> detect(Mat testImage) {//detect faces and draw a blue rectangle arroung each face
+    /**
+     * Allocation free variant of {@link #detect(Mat)}. Boxes are written to
+     * {@code boxes} as consecutive x, y, width, height quadruples in the
+     * coordinates of {@code testImage}.
+     *
+     * @return number of faces written, at most {@code boxes.length / 4}
+     */
+    public int detect(Mat testImage, int[] boxes) {
+        try {
+            return netPool.execute(context -> detect(context, testImage, boxes));
+        } catch (Exception e) {
+            throw new RuntimeException("Error during face detection", e);
+        }
+    }
 
-        List<Rect> faces = new ArrayList<>();
+    private int detect(DetectionContext context, Mat testImage, int[] boxes) {
+        Mat blob = context.getBlob();
 
-        Mat output = null, ne = null, blob = null, image = null;
+        //create a 4-dimensional blob from image with NCHW (Number of images in the batch -for training only-, Channel, Height, Width) dimensions order,
+        //for more detailes read the official docs at https://docs.opencv.org/trunk/d6/d0f/group__dnn.html#gabd0e76da3c6ad15c08b01ef21ad55dd8
+        blobFromImage(context.resize(testImage), blob, 1.0, context.getInputSize(), context.getMean(), false, false, CV_32F);
 
-        try {
-            image = new Mat(testImage);
+        forward(context, blob);
+        return readDetections(context.readOutput(), context.detectionRows(), 0, 0, 0,
+                testImage.cols(), testImage.rows(), boxes, null, 0);
+    }
+
+    // Detects faces on several frames with a single forward pass, results keep the order of the input frames
+    public List<List<Rect>> detectBatch(List<Mat> testImages) {
 
-            resize(image, image, new Size(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE));//resize the image to match the input size of the model
+        List<List<Rect>> faces = new ArrayList<>(testImages.size());
 
-            //create a 4-dimensional blob from image with NCHW (Number of images in the batch -for training only-, Channel, Height, Width) dimensions order,
-            //for more detailes read the official docs at https://docs.opencv.org/trunk/d6/d0f/group__dnn.html#gabd0e76da3c6ad15c08b01ef21ad55dd8
-            blob = blobFromImage(image, 1.0, new Size(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE), new Scalar(104.0, 177.0, 123.0, 0), false, false, CV_32F);
+        if (testImages.isEmpty()) {
+            return faces;
+        }
+
+        try {
+            netPool.execute(context -> {
+                int[] boxes = context.boxes(MAX_DETECTIONS);
+                MatVector images = context.getBatchImages();
+                Mat blob = context.getBatchBlob();
 
-            net.setInput(blob);//set the input to network model
-            output = net.forward();//feed forward the input to the netwrok to get the output matrix
+                try {
+                    images.resize(testImages.size());
+                    for (int i = 0; i < testImages.size(); i++) {
+                        images.put(i, testImages.get(i));
+                    }
 
-            ne = new Mat(new Size(output.size(3), output.size(2)), CV_32F, output.ptr(0, 0));//extract a 2d matrix for 4d output matrix with form of (number of detections x 7)
+                    //every image of the batch becomes one N entry of the NCHW blob and is resized to match the input size of the model
+                    context.prepareBatch(testImages.size());
+                    blobFromImages(images, blob, 1.0, context.getInputSize(), context.getMean(), false, false, CV_32F);
 
-            FloatIndexer srcIndexer = ne.createIndexer(); // create indexer to access elements of the matric
+                    forward(context, blob);
+                    FloatPointer detections = context.readOutput();
+                    int rows = context.detectionRows();
 
-            for (int i = 0; i < output.size(3); i++) {//iterate to extract elements
-                float confidence = srcIndexer.get(i, 2);
-                float f1 = srcIndexer.get(i, 3);
-                float f2 = srcIndexer.get(i, 4);
-                float f3 = srcIndexer.get(i, 5);
-                float f4 = srcIndexer.get(i, 6);
-                if (confidence > .6) {
-                    float tx = f1 * MODEL_INPUT_SIZE;//top left point's x
-                    float ty = f2 * MODEL_INPUT_SIZE;//top left point's y
-                    float bx = f3 * MODEL_INPUT_SIZE;//bottom right point's x
-                    float by = f4 * MODEL_INPUT_SIZE;//bottom right point's y
-                    faces.add(createReact(tx, ty, bx, by, testImage.size().width(), testImage.size().height()));
+                    for (int i = 0; i < testImages.size(); i++) {
+                        Mat testImage = testImages.get(i);
+                        int count = readDetections(detections, rows, i, 0, 0, testImage.cols(), testImage.rows(),
+                                boxes, null, 0);
+                        faces.add(toRects(boxes, count));
+                    }
+                } finally {
+                    // drop the references to the caller's frames
+                    images.resize(0);
                 }
-            }
+                return faces;
+            });
         } catch (Exception e) {
             throw new RuntimeException("Error during face detection", e);
-        } finally {
-            matUtil.releaseResources(ne, output, blob, image);
         }
 
         return faces;
     }
 
-    // Creates rect based on original image size that was resized due model input
-    private Rect createReact(float tx, float ty, float bx, float by, int width, int height) {
-        float newTx = (tx/ MODEL_INPUT_SIZE)*width;
-        float newTy = (ty/ MODEL_INPUT_SIZE)*height;
-        float newBx = (bx/ MODEL_INPUT_SIZE)*width;
-        float newBy = (by/ MODEL_INPUT_SIZE)*height;
-        return new Rect(new Point((int) newTx, (int) newTy), new Point((int) newBx, (int) newBy));
+    /**
+     * Detects faces with the given tiling settings. In tiled mode the frame
+     * is cut by {@link DetectionTiles}, the tiles go through the network in
+     * batches of {@code batchSize} and the boxes found in overlapping tiles
+     * are merged by non-maximum suppression. Single shot settings fall back
+     * to {@link #detect(Mat)}.
+     */
+    public List<Rect> detect(Mat testImage, DetectionProperties.Tiling tiling) {
+
+        if (tiling.getMode() != DetectionMode.TILED) {
+            return detect(testImage);
+        }
+
+        List<DetectionTiles.Tile> tiles = DetectionTiles.layout(testImage.cols(), testImage.rows(), tiling);
+        int batchSize = Math.max(1, tiling.getBatchSize());
+
+        try {
+            return netPool.execute(context -> {
+                MatVector images = context.getBatchImages();
+                Mat blob = context.getBatchBlob();
+                int[] boxes = context.boxes(MAX_DETECTIONS);
+                int count = 0;
+
+                try {
+                    for (int from = 0; from < tiles.size(); from += batchSize) {
+                        int size = Math.min(batchSize, tiles.size() - from);
+
+                        // tiles are views of the frame, blobFromImages scales each one to the model input
+                        images.resize(size);
+                        for (int i = 0; i < size; i++) {
+                            try (Mat view = new Mat(testImage, tiles.get(from + i).area())) {
+                                images.put(i, view);
+                            }
+                        }
+                        context.prepareBatch(size);
+                        blobFromImages(images, blob, 1.0, context.getInputSize(), context.getMean(), false, false, CV_32F);
+
+                        forward(context, blob);
+                        FloatPointer detections = context.readOutput();
+                        int rows = context.detectionRows();
+
+                        for (int i = 0; i < size; i++) {
+                            DetectionTiles.Tile tile = tiles.get(from + i);
+                            boxes = context.boxes(count + MAX_DETECTIONS);
+                            float[] scores = context.getScores();
+                            Rect area = tile.area();
+                            int found = readDetections(detections, rows, i, area.x(), area.y(), area.width(), area.height(),
+                                    boxes, scores, count);
+                            count = dropCutFaces(tile, boxes, scores, count, found);
+                        }
+                    }
+                } finally {
+                    // drop the references to the tiles of the caller's frame
+                    images.resize(0);
+                }
+
+                return suppress(boxes, context.getScores(), count, tiling.getNmsThreshold());
+            });
+        } catch (Exception e) {
+            throw new RuntimeException("Error during tiled face detection", e);
+        }
+    }
+
+    // The output stays in the context outputs, read it with DetectionContext#readOutput
+    private void forward(DetectionContext context, Mat blob) {
+        long startedAt = System.nanoTime();
+        Net net = context.getNet();
+        net.setInput(blob);//set the input to network model
+        net.forward(context.getOutputs());//feed forward the input to the netwrok to get the output matrix
+        context.inferred();
+        metricsRegistry.record(TimedStage.INFERENCE, MetricsRegistry.NO_CAMERA, startedAt);
+    }
+
+    /**
+     * Output has the form 1 x 1 x rows x 7, column 0 holds
+     * the index of the frame in the batch. Boxes of the frame are scaled to
+     * width x height, moved by x, y and appended to boxes from index count,
+     * their confidence to scores when it is not null.
+     *
+     * @return number of boxes appended
+     */
+    static int readDetections(FloatPointer detections, int rows, int imageId, int x, int y, int width, int height,
+                              int[] boxes, float[] scores, int start) {
+
+        int count = start;
+
+        for (int i = 0; i < rows && (count + 1) * 4 <= boxes.length; i++) {//iterate over every detection of the batch
+            long row = i * 7L;
+            float confidence = detections.get(row + 2);
+            if ((int) detections.get(row) != imageId || confidence <= CONFIDENCE_THRESHOLD) {
+                continue;
+            }
+            int tx = (int) (detections.get(row + 3) * width);//top left point's x
+            int ty = (int) (detections.get(row + 4) * height);//top left point's y
+            int bx = (int) (detections.get(row + 5) * width);//bottom right point's x
+            int by = (int) (detections.get(row + 6) * height);//bottom right point's y
+            int offset = count * 4;
+            boxes[offset] = x + Math.min(tx, bx);
+            boxes[offset + 1] = y + Math.min(ty, by);
+            boxes[offset + 2] = Math.abs(bx - tx);
+            boxes[offset + 3] = Math.abs(by - ty);
+            if (scores != null) {
+                scores[count] = confidence;
+            }
+            count++;
+        }
+
+        return count - start;
+    }
+
+    /**
+     * A face cut by a tile side shared with another tile is seen whole by
+     * that neighbour (or by the full frame pass when it is larger than the
+     * overlap), so partial boxes touching such a side are dropped instead of
+     * being left to NMS, which does not merge a box with the larger one
+     * containing it.
+     *
+     * @return number of boxes kept, the first count ones are left untouched
+     */
+    private int dropCutFaces(DetectionTiles.Tile tile, int[] boxes, float[] scores, int count, int found) {
+        Rect area = tile.area();
+        int margin = Math.max(1, area.width() / 100);
+        int kept = count;
+
+        for (int i = count; i < count + found; i++) {
+            int offset = i * 4;
+            int left = boxes[offset], top = boxes[offset + 1];
+            int right = left + boxes[offset + 2], bottom = top + boxes[offset + 3];
+            boolean cut = (tile.innerEdges() & DetectionTiles.LEFT) != 0 && left <= area.x() + margin
+                    || (tile.innerEdges() & DetectionTiles.TOP) != 0 && top <= area.y() + margin
+                    || (tile.innerEdges() & DetectionTiles.RIGHT) != 0 && right >= area.x() + area.width() - margin
+                    || (tile.innerEdges() & DetectionTiles.BOTTOM) != 0 && bottom >= area.y() + area.height() - margin;
+            if (cut) {
+                continue;
+            }
+            System.arraycopy(boxes, offset, boxes, kept * 4, 4);
+            scores[kept++] = scores[i];
+        }
+        return kept;
+    }
+
+    // Keeps the most confident box of every group overlapping more than the threshold
+    private List<Rect> suppress(int[] boxes, float[] scores, int count, float threshold) {
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        try (RectVector candidates = new RectVector(count);
+             FloatPointer confidences = new FloatPointer(count);
+             IntPointer indices = new IntPointer(count)) {
+
+            for (int i = 0; i < count; i++) {
+                int offset = i * 4;
+                try (Rect rect = new Rect(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3])) {
+                    candidates.put(i, rect);
+                }
+            }
+            confidences.put(scores, 0, count);
+            NMSBoxes(candidates, confidences, CONFIDENCE_THRESHOLD, threshold, indices);
+
+            List<Rect> faces = new ArrayList<>((int) indices.limit());
+            for (long i = 0; i < indices.limit(); i++) {
+                int offset = indices.get(i) * 4;
+                faces.add(new Rect(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3]));
+            }
+            return faces;
+        }
+    }
+
+    private List<Rect> toRects(int[] boxes, int count) {
+        List<Rect> faces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = i * 4;
+            faces.add(new Rect(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3]));
+        }
+        return faces;
     }
 }
@@ -0,0 +1,141 @@
+package com.icaroerasmo.service;
+
+import lombok.Getter;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_dnn.Net;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.icaroerasmo.service.DeepLearningFaceDetectionService.MAX_DETECTIONS;
+import static com.icaroerasmo.service.DeepLearningFaceDetectionService.MODEL_INPUT_SIZE;
+import static org.bytedeco.opencv.global.opencv_core.CV_32F;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * Scratch buffers bound to one pooled {@link Net}. They are allocated once and
+ * reused by every inference that borrows the net, so the detection hot path
+ * does not touch the native allocator once it reaches steady state.
+ * <p>
+ * {@code allocations} counts every native buffer (re)allocation made on behalf
+ * of the context, including the initial ones. It should stop growing after
+ * the first frames while {@code inferences} keeps increasing.
+ * <p>
+ * The network output is copied into {@code detections}, a buffer owned by
+ * the context, so the pointer used to read it survives between inferences
+ * and no JavaCPP wrapper is created per frame.
+ */
+@Getter
+public class DetectionContext implements AutoCloseable {
+
+    private final Net net;
+    private final Mat resized;
+    private final Mat blob;
+    private final Mat batchBlob = new Mat();
+    private final MatVector batchImages = new MatVector();
+    private final MatVector outputs = new MatVector();
+    private final Size inputSize = new Size(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE);
+    private final Scalar mean = new Scalar(104.0, 177.0, 123.0, 0);
+    private final Mat detections = new Mat();
+    private FloatPointer detectionData;
+    // view of outputs[0], the vector keeps its storage once the net has run
+    private Mat output;
+    private int[] boxes = new int[MAX_DETECTIONS * 4];
+    private float[] scores = new float[MAX_DETECTIONS];
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong inferences = new AtomicLong();
+
+    public DetectionContext(Net net) {
+        this.net = net;
+        this.resized = new Mat(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, CV_8UC3);
+        this.blob = new Mat(4, new int[]{1, 3, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE}, CV_32F);
+        allocations.addAndGet(2);
+    }
+
+    // Resizes the frame into the reusable model input buffer
+    Mat resize(Mat image) {
+        if (image.type() != resized.type()) {
+            allocations.incrementAndGet();
+        }
+        org.bytedeco.opencv.global.opencv_imgproc.resize(image, resized, inputSize);
+        return resized;
+    }
+
+    // Reports whether the batch blob is about to be reallocated for a batch of the given size
+    void prepareBatch(int batchSize) {
+        if (batchBlob.dims() != 4 || batchBlob.size(0) != batchSize) {
+            allocations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Copies the last output of the net into the owned detections buffer.
+     * The buffer and its pointer are only replaced when the output shape
+     * changes, e.g. for a different batch size.
+     */
+    FloatPointer readOutput() {
+        if (output == null) {
+            output = outputs.get(0);
+        }
+        boolean reshaped = detectionData == null || detections.dims() != output.dims();
+        for (int i = 0; !reshaped && i < output.dims(); i++) {
+            reshaped = detections.size(i) != output.size(i);
+        }
+        output.copyTo(detections);
+        if (reshaped) {
+            if (detectionData != null) {
+                detectionData.close();
+            }
+            detectionData = new FloatPointer(detections.data());
+            allocations.incrementAndGet();
+        }
+        return detectionData;
+    }
+
+    // Number of detection rows of the last output read
+    int detectionRows() {
+        return detections.size(2);
+    }
+
+    // Grows the box and score buffers so they hold at least the given number of detections
+    int[] boxes(int capacity) {
+        if (boxes.length < capacity * 4) {
+            int size = Math.max(capacity, boxes.length / 2);
+            boxes = Arrays.copyOf(boxes, size * 4);
+            scores = Arrays.copyOf(scores, size);
+            allocations.incrementAndGet();
+        }
+        return boxes;
+    }
+
+    void inferred() {
+        inferences.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        batchImages.resize(0);
+        if (output != null) {
+            output.close();
+        }
+        outputs.resize(0);
+        if (detectionData != null) {
+            detectionData.close();
+        }
+        detections.release();
+        detections.close();
+        resized.release();
+        blob.release();
+        batchBlob.release();
+        batchImages.close();
+        outputs.close();
+        inputSize.close();
+        mean.close();
+        net.close();
+    }
+}
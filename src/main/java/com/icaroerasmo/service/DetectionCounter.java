@@ -0,0 +1,77 @@
+package com.icaroerasmo.service;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of detections of one person on one camera over a sliding window.
+ * The window is a ring of time buckets and every slot packs the bucket
+ * index (high 40 bits) with its count (low 24 bits) into a single long, so
+ * recording an event is one CAS and allocates nothing. A slot still holding
+ * an older bucket is simply overwritten when its turn comes around again.
+ */
+public class DetectionCounter {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final long origin;
+    private final long bucketNanos;
+    private final AtomicLongArray slots;
+
+    @Getter
+    @Setter
+    private volatile boolean announce;
+
+    public DetectionCounter(long origin, long windowNanos, int buckets) {
+        this.origin = origin;
+        this.bucketNanos = Math.max(1, windowNanos / buckets);
+        this.slots = new AtomicLongArray(buckets);
+    }
+
+    public void record(long now) {
+        long bucket = bucket(now);
+        int slot = (int) (bucket % slots.length());
+        while (true) {
+            long current = slots.get(slot);
+            long next;
+            if (current >>> COUNT_BITS == bucket) {
+                if ((current & COUNT_MASK) == COUNT_MASK) {
+                    return;
+                }
+                next = current + 1;
+            } else {
+                next = bucket << COUNT_BITS | 1;
+            }
+            if (slots.compareAndSet(slot, current, next)) {
+                return;
+            }
+        }
+    }
+
+    // Detections in the current bucket and the ones before it that are still inside the window
+    public int count(long now) {
+        long bucket = bucket(now);
+        int total = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            long value = slots.get(i);
+            long age = bucket - (value >>> COUNT_BITS);
+            if (age >= 0 && age < slots.length()) {
+                total += (int) (value & COUNT_MASK);
+            }
+        }
+        return total;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+    }
+
+    private long bucket(long now) {
+        return (now - origin) / bucketNanos;
+    }
+}
@@ -0,0 +1,8 @@
+package com.icaroerasmo.service;
+
+public enum DetectionMode {
+    // The whole frame is scaled to the model input in a single pass
+    SINGLE_SHOT,
+    // Overlapping tiles are scaled to the model input and run as a batch, keeping small faces detectable
+    TILED
+}
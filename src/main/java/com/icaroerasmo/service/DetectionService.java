@@ -1,66 +1,116 @@
 package com.icaroerasmo.service;
 
-import com.icaroerasmo.model.DetectionRecord;
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.PipelineCounter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
-import java.time.Instant;
-import java.util.*;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Decides which recognitions get announced. A person is announced when they
+ * show up after having been seen fewer than min-detections times within the
+ * window, and stays quiet while continuously detected. Counts are kept per
+ * camera and person; each camera re-evaluates its people at its own cadence
+ * from the recognition threads themselves, so there is no global sweep.
+ */
 @Log4j2
 @Service
+@RequiredArgsConstructor
 public class DetectionService {
-    private static final int MIN_DETECTION_WINDOW_SECONDS = 3;
-    private static final int MIN_DETECTIONS = 5;
+
     private static final String UNKNOWN = "Unknown";
+    // Granularity of the sliding window, the oldest bucket is dropped as a whole
+    private static final int BUCKETS_PER_WINDOW = 8;
 
-    private final Map<String, List<DetectionRecord>> detectionBuffer = new ConcurrentHashMap<>();
-    private final Map<String, Boolean> announceFlags = new ConcurrentHashMap<>();
+    private final PipelineProperties properties;
+    private final MetricsRegistry metricsRegistry;
+    private final long origin = System.nanoTime();
+    private final Map<String, CameraDetections> cameras = new ConcurrentHashMap<>();
 
-    public boolean shouldAnnounceDetection(String personName, Double score) {
-        if (personName == null || score == null) {
+    public boolean shouldAnnounceDetection(String camera, String personName) {
+        if (camera == null || personName == null) {
             return false;
         }
 
-        Instant now = Instant.now();
-        detectionBuffer.computeIfAbsent(personName, k -> Collections.synchronizedList(new ArrayList<>()))
-                .add(new DetectionRecord(personName, score, now));
+        long now = System.nanoTime();
+
+        CameraDetections detections = cameras.get(camera);
+        if (detections == null) {
+            detections = cameras.computeIfAbsent(camera, this::createCameraDetections);
+        }
 
-        return announceFlags.getOrDefault(personName, false);
+        DetectionCounter counter = detections.counter(personName);
+        counter.record(now);
+        detections.evaluateIfDue(now);
+
+        boolean announce = counter.isAnnounce();
+        if (announce) {
+            metricsRegistry.increment(PipelineCounter.ANNOUNCEMENTS, camera);
+        }
+        return announce;
     }
 
-    @Scheduled(fixedDelay = 1000)
-    private void checkDetections() {
-        Instant now = Instant.now();
-        boolean hasOtherDetections = detectionBuffer.keySet().stream()
-                .anyMatch(name -> !UNKNOWN.equals(name));
-
-        detectionBuffer.forEach((personName, detections) -> {
-            cleanOldDetections(personName, now);
-            Instant windowStart = now.minusSeconds(MIN_DETECTION_WINDOW_SECONDS);
-            long recentDetections = detections.stream()
-                    .filter(d -> !d.getTimestamp().isBefore(windowStart))
-                    .count();
-
-            if (recentDetections < MIN_DETECTIONS) {
-                if (!UNKNOWN.equals(personName) || !hasOtherDetections) {
-                    announceFlags.put(personName, true);
-                }
-                detections.clear();
-            } else {
-                announceFlags.put(personName, false);
-            }
-        });
+    private CameraDetections createCameraDetections(String camera) {
+        PipelineProperties.Announcement announcement = properties.getCameras().stream()
+                .filter(c -> camera.equals(c.getName()) && c.getAnnouncement() != null)
+                .map(PipelineProperties.Camera::getAnnouncement)
+                .findFirst()
+                .orElse(properties.getAnnouncement());
+        return new CameraDetections(announcement);
     }
 
-    private void cleanOldDetections(String personName, Instant now) {
-        List<DetectionRecord> records = detectionBuffer.get(personName);
-        if (records != null) {
-            records.removeIf(record ->
-                    Duration.between(record.getTimestamp(), now).getSeconds() > MIN_DETECTION_WINDOW_SECONDS);
+    private class CameraDetections {
+
+        private final long windowNanos;
+        private final long evaluationNanos;
+        private final int minDetections;
+        private final Map<String, DetectionCounter> people = new ConcurrentHashMap<>();
+        private final AtomicLong nextEvaluation = new AtomicLong(origin);
+
+        CameraDetections(PipelineProperties.Announcement announcement) {
+            this.windowNanos = TimeUnit.SECONDS.toNanos(announcement.getWindowSeconds());
+            this.evaluationNanos = TimeUnit.MILLISECONDS.toNanos(announcement.getEvaluationMillis());
+            this.minDetections = announcement.getMinDetections();
+        }
+
+        DetectionCounter counter(String personName) {
+            DetectionCounter counter = people.get(personName);
+            if (counter == null) {
+                counter = people.computeIfAbsent(personName,
+                        name -> new DetectionCounter(origin, windowNanos, BUCKETS_PER_WINDOW));
+            }
+            return counter;
+        }
+
+        // Only the thread that moves the deadline forward evaluates
+        void evaluateIfDue(long now) {
+            long due = nextEvaluation.get();
+            if (now - due >= 0 && nextEvaluation.compareAndSet(due, now + evaluationNanos)) {
+                evaluate(now);
+            }
+        }
+
+        private void evaluate(long now) {
+            // Unknown faces are not announced while someone known is in view
+            boolean knownInView = people.entrySet().stream()
+                    .anyMatch(e -> !UNKNOWN.equals(e.getKey()) && e.getValue().count(now) > 0);
+
+            people.forEach((personName, counter) -> {
+                if (counter.count(now) < minDetections) {
+                    if (!UNKNOWN.equals(personName) || !knownInView) {
+                        counter.setAnnounce(true);
+                    }
+                    counter.clear();
+                } else {
+                    counter.setAnnounce(false);
+                }
+            });
         }
     }
 }
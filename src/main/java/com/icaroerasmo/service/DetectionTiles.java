@@ -0,0 +1,85 @@
+package com.icaroerasmo.service;
+
+import com.icaroerasmo.config.DetectionProperties;
+import org.bytedeco.opencv.opencv_core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a frame into the overlapping square tiles of tiled detection. Tiles
+ * cover every configured region, or the whole frame when there is none, and
+ * are spread evenly so neighbours share at least {@code overlap} of a tile.
+ * The whole frame comes first when {@code fullFrame} is set, frames no
+ * larger than a tile are only run whole.
+ */
+public final class DetectionTiles {
+
+    // Sides of a tile shared with a neighbouring tile
+    public static final int LEFT = 1;
+    public static final int TOP = 2;
+    public static final int RIGHT = 4;
+    public static final int BOTTOM = 8;
+
+    public record Tile(Rect area, int innerEdges) {}
+
+    private DetectionTiles() {
+    }
+
+    public static List<Tile> layout(int width, int height, DetectionProperties.Tiling tiling) {
+        List<Tile> tiles = new ArrayList<>();
+        int size = Math.min(tiling.getTileSize(), Math.min(width, height));
+
+        if (tiling.isFullFrame() || size <= 0 || (width <= size && height <= size)) {
+            tiles.add(new Tile(new Rect(0, 0, width, height), 0));
+            if (size <= 0 || (width <= size && height <= size)) {
+                return tiles;
+            }
+        }
+
+        int stride = Math.max(1, (int) Math.round(size * (1 - Math.clamp(tiling.getOverlap(), 0, 0.9))));
+
+        if (tiling.getRegions().isEmpty()) {
+            addTiles(tiles, 0, 0, width, height, width, height, size, stride);
+            return tiles;
+        }
+
+        for (DetectionProperties.Region region : tiling.getRegions()) {
+            int left = Math.clamp(Math.round(region.getX() * width), 0, width);
+            int top = Math.clamp(Math.round(region.getY() * height), 0, height);
+            int right = Math.clamp(Math.round((region.getX() + region.getWidth()) * width), left, width);
+            int bottom = Math.clamp(Math.round((region.getY() + region.getHeight()) * height), top, height);
+            if (right > left && bottom > top) {
+                addTiles(tiles, left, top, right - left, bottom - top, width, height, size, stride);
+            }
+        }
+        return tiles;
+    }
+
+    private static void addTiles(List<Tile> tiles, int x, int y, int regionWidth, int regionHeight,
+                                 int width, int height, int size, int stride) {
+        int[] columns = positions(x, regionWidth, width, size, stride);
+        int[] rows = positions(y, regionHeight, height, size, stride);
+
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < columns.length; column++) {
+                int edges = (column > 0 ? LEFT : 0) | (row > 0 ? TOP : 0)
+                        | (column < columns.length - 1 ? RIGHT : 0) | (row < rows.length - 1 ? BOTTOM : 0);
+                tiles.add(new Tile(new Rect(columns[column], rows[row], size, size), edges));
+            }
+        }
+    }
+
+    // Evenly spaced tile offsets along one axis, a region shorter than a tile gets one tile centered on it
+    private static int[] positions(int start, int length, int frameLength, int size, int stride) {
+        if (length <= size) {
+            return new int[]{Math.clamp(start + (length - size) / 2, 0, frameLength - size)};
+        }
+        int count = (length - size + stride - 1) / stride + 1;
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = start + (int) Math.round((double) i * (length - size) / (count - 1));
+        }
+        return positions;
+    }
+}
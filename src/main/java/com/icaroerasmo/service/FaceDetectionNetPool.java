@@ -0,0 +1,132 @@
+package com.icaroerasmo.service;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.metrics.MetricsSource;
+import com.icaroerasmo.metrics.MetricsWriter;
+import com.icaroerasmo.utils.MemorySubsystem;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_dnn.Net;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.bytedeco.opencv.global.opencv_core.setNumThreads;
+import static org.bytedeco.opencv.global.opencv_dnn.readNetFromCaffe;
+
+/**
+ * Owns a fixed set of face detection {@link Net} instances, each one paired
+ * with its own {@link DetectionContext}. A Net keeps its input and
+ * intermediate blobs internally, so it can only serve one inference at a
+ * time; callers borrow a context for the duration of a forward pass.
+ * <p>
+ * The model files are read from disk once and every Net is built from the
+ * same in-memory buffers.
+ */
+@Log4j2
+@Component
+public class FaceDetectionNetPool implements MetricsSource {
+
+    private static final String PROTO_FILE = "opencv/deploy.prototxt";
+    private static final String CAFFE_MODEL_FILE = "opencv/res10_300x300_ssd_iter_140000.caffemodel";
+
+    private final List<DetectionContext> contexts = new ArrayList<>();
+    private final BlockingQueue<DetectionContext> available;
+    @Getter
+    private final int size;
+    private final NativeMemoryTracker memoryTracker;
+
+    public FaceDetectionNetPool(DetectionProperties properties, NativeMemoryTracker memoryTracker) {
+        this(properties.getPoolSize(), caffeNets(properties), memoryTracker);
+    }
+
+    FaceDetectionNetPool(int size, Supplier<Net> nets, NativeMemoryTracker memoryTracker) {
+        this.memoryTracker = memoryTracker;
+        this.size = Math.max(1, size);
+        this.available = new ArrayBlockingQueue<>(this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            DetectionContext context = new DetectionContext(nets.get());
+            memoryTracker.trackResident(MemorySubsystem.DETECT, context.getResized());
+            memoryTracker.trackResident(MemorySubsystem.DETECT, context.getBlob());
+            contexts.add(context);
+            available.add(context);
+        }
+
+        log.info("Face detection pool started with {} networks", size);
+    }
+
+    public <T> T execute(Function<DetectionContext, T> inference) {
+        DetectionContext context;
+        try {
+            context = available.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a detection network", e);
+        }
+
+        try {
+            return inference.apply(context);
+        } finally {
+            available.add(context);
+        }
+    }
+
+    // Native buffer allocations made by every context since startup
+    public long getAllocations() {
+        return contexts.stream().mapToLong(context -> context.getAllocations().get()).sum();
+    }
+
+    public long getInferences() {
+        return contexts.stream().mapToLong(context -> context.getInferences().get()).sum();
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        writer.counter("detection_inferences", "Forward passes of the detection networks", getInferences());
+        writer.counter("detection_buffer_allocations", "Native buffer allocations of the detection contexts",
+                getAllocations());
+        writer.gauge("detection_networks_idle", "Detection networks not borrowed", available.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        contexts.forEach(context -> {
+            memoryTracker.release(context.getResized());
+            memoryTracker.release(context.getBlob());
+            context.close();
+        });
+        contexts.clear();
+        available.clear();
+    }
+
+    // Builds every Net from the same in-memory copy of the model files
+    private static Supplier<Net> caffeNets(DetectionProperties properties) {
+        if (properties.getOpencvThreads() >= 0) {
+            setNumThreads(properties.getOpencvThreads());
+        }
+
+        byte[] proto = readResource(PROTO_FILE);
+        byte[] model = readResource(CAFFE_MODEL_FILE);
+        return () -> readNetFromCaffe(proto, model);
+    }
+
+    private static byte[] readResource(String resource) {
+        try {
+            return Files.readAllBytes(Path.of(ClassLoader.getSystemResource(resource).toURI()));
+        } catch (URISyntaxException | IOException e) {
+            throw new RuntimeException("Could not read model file " + resource, e);
+        }
+    }
+}
@@ -1,30 +1,41 @@
 package com.icaroerasmo.service;
 
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.PipelineCounter;
+import com.icaroerasmo.metrics.TimedStage;
 import com.icaroerasmo.model.FaceRecognition;
+import com.icaroerasmo.model.GalleryManifest;
+import com.icaroerasmo.model.Prediction;
+import com.icaroerasmo.recognition.FaceNormalizer;
+import com.icaroerasmo.recognition.FaceRecognitionModel;
+import com.icaroerasmo.recognition.FaceRecognizerBackend;
 import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.utils.MemorySubsystem;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.bytedeco.javacpp.PointerScope;
 import org.bytedeco.opencv.opencv_core.*;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
-import org.bytedeco.javacpp.DoublePointer;
-import org.bytedeco.javacpp.IntPointer;
-import org.bytedeco.opencv.opencv_face.FaceRecognizer;
-import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.stream.Collectors.toMap;
-import static org.bytedeco.opencv.global.opencv_core.CV_32SC1;
 import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
 
 @Log4j2
@@ -32,134 +43,357 @@ import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
 @RequiredArgsConstructor
 public class FaceRecognitionService {
 
-    private static final Path DATASET = Paths.get("trained_dataset.xml");
-    public static final int MIN_SCORE = 40;
     public static final String UNKNOWN = "Unknown";
 
     private final DeepLearningFaceDetectionService deepLearningFaceDetectionService;
+    private final FaceDetectionNetPool netPool;
+    private final GalleryManifestService galleryManifestService;
+    private final FaceRecognizerBackend backend;
+    private final FaceNormalizer faceNormalizer;
     private final MatUtil matUtil;
+    private final MetricsRegistry metricsRegistry;
 
-    public FaceRecognizer load() {
-        FaceRecognizer faceRecognizer = LBPHFaceRecognizer.create();
-        faceRecognizer.read(DATASET.toString());
-        return faceRecognizer;
+    public boolean isTrained() {
+        return backend.isTrained();
     }
 
-    public FaceRecognition test(FaceRecognizer faceRecognizer, String testFile) throws Exception {
+    public FaceRecognitionModel load() throws IOException {
+        log.info("Loading the {} recognition model", backend.getType());
+        return backend.load();
+    }
+
+    public FaceRecognition test(FaceRecognitionModel model, String testFile) throws Exception {
         final Mat testImage = imread(testFile/*,IMREAD_GRAYSCALE*/);
-        return test(faceRecognizer, testImage);
+        return test(model, testImage);
     }
 
-    public FaceRecognition test(FaceRecognizer faceRecognizer, Mat testImage) {
+    public FaceRecognition test(FaceRecognitionModel model, Mat testImage) {
+        return recognize(model, testImage, deepLearningFaceDetectionService.detect(testImage));
+    }
+
+    // Runs recognition over faces already found by the detection stage
+    public FaceRecognition recognize(FaceRecognitionModel model, Mat testImage, List<Rect> faces) {
+        return recognize(MetricsRegistry.NO_CAMERA, model, testImage, faces);
+    }
+
+    // Same as above, timings and counts are recorded under the camera name
+    public FaceRecognition recognize(String camera, FaceRecognitionModel model, Mat testImage, List<Rect> faces) {
+
+        List<FaceRecognition.DetectedFaces> detectedFaces = faces.stream().
+                map(faceRect -> recognize(camera, model, testImage, faceRect)).
+                filter(detected -> detected != null).toList();
+
+        return new FaceRecognition(detectedFaces, testImage);
+    }
 
-        List<FaceRecognition.DetectedFaces> detectedFaces = deepLearningFaceDetectionService.detect(testImage).stream().map(faceRect -> {
+    public FaceRecognition.DetectedFaces recognize(FaceRecognitionModel model, Mat testImage, Rect faceRect) {
+        return recognize(MetricsRegistry.NO_CAMERA, model, testImage, faceRect);
+    }
 
-            Mat img = null;
+    public FaceRecognition.DetectedFaces recognize(String camera, FaceRecognitionModel model, Mat testImage,
+                                                   Rect faceRect) {
 
-            try {
-                img = matUtil.convertToGray(new Mat(testImage, faceRect));
+        try {
+            long startedAt = System.nanoTime();
+            // Reusable buffer of the calling thread, not released here
+            Mat img = faceNormalizer.normalize(testImage, faceRect);
 
-                IntPointer detectedPersonPtr = new IntPointer(1);
-                DoublePointer confidencePtr = new DoublePointer(1);
+            if (img == null) {
+                return null;
+            }
+            metricsRegistry.record(TimedStage.NORMALIZE, camera, startedAt);
 
-                faceRecognizer.predict(img, detectedPersonPtr, confidencePtr);
+            startedAt = System.nanoTime();
+            Prediction prediction;
+            // Frees whatever native temporaries the model allocates, e.g. the label info of OpenCV recognizers
+            try (PointerScope scope = new PointerScope()) {
+                prediction = model.predict(img);
+            }
+            metricsRegistry.record(TimedStage.PREDICT, camera, startedAt);
 
-                String label = faceRecognizer.getLabelInfo(detectedPersonPtr.get(0)).getString();
-                String detectedPerson = label.substring(0, label.length() - 1); // Remove the last character which is a space
-                double detectionConfidence = confidencePtr.get(0);
+            String detectedPerson = prediction.getPersonName();
+            double detectionConfidence = prediction.getDistance();
 
-                if (detectionConfidence > MIN_SCORE) {
+            // Per face output is debug only, faces and unknowns are counted by the metrics instead
+            metricsRegistry.increment(PipelineCounter.FACES, camera);
+            if (detectedPerson == null || detectionConfidence > backend.getThreshold()) {
+                if (log.isDebugEnabled()) {
                     log.debug("Detected person is {} with confidence {}" +
                                     " but score is bigger than {} so result is {}.",
-                            detectedPerson, detectionConfidence, MIN_SCORE, UNKNOWN);
-                    detectedPerson = UNKNOWN;
-                } else {
-                    log.info("Detected person is {} with confidence {}", detectedPerson, detectionConfidence);
+                            detectedPerson, detectionConfidence, backend.getThreshold(), UNKNOWN);
                 }
+                metricsRegistry.increment(PipelineCounter.UNKNOWN_FACES, camera);
+                detectedPerson = UNKNOWN;
+            } else if (log.isDebugEnabled()) {
+                log.debug("Detected person is {} with confidence {}", detectedPerson, detectionConfidence);
+            }
+
+            return new FaceRecognition.DetectedFaces(detectedPerson, detectionConfidence, faceRect,
+                    FaceRecognition.DetectedFaces.UNTRACKED);
+        } catch(Exception e) {
+            log.error("Error processing face detection", e);
+            throw new RuntimeException("Error processing face detection", e);
+        }
+    }
+
+    public FaceRecognitionModel train(String root) throws IOException {
+
+        try (FaceRecognizerBackend.Trainer trainer = backend.trainer(false)) {
+            fit(trainer, listTrainingImages(Paths.get(root)), new GalleryManifest());
+        }
+
+        return backend.load();
+    }
+
+    /**
+     * Adds the images of root that are not part of the model yet. Faces of
+     * images removed from the gallery or replaced by different content stay
+     * in the model until the next full {@link #train(String)}, a warning
+     * counts them.
+     */
+    public FaceRecognitionModel enroll(FaceRecognitionModel model, String root) throws IOException {
+
+        GalleryManifest manifest = galleryManifestService.load();
+
+        if (manifest == null) {
+            log.info("No gallery manifest found, training from scratch");
+            model.close();
+            return train(root);
+        }
+
+        List<TrainingImage> files = listTrainingImages(Paths.get(root));
+
+        Set<Path> current = files.stream().map(TrainingImage::path).collect(Collectors.toSet());
+        long removed = manifest.getEntries().entrySet().stream()
+                .filter(entry -> !current.contains(entry.getKey()))
+                .filter(entry -> entry.getValue().getLabel() != GalleryManifest.NO_FACE)
+                .count();
+
+        List<TrainingImage> delta = files.stream().filter(file -> {
+            GalleryManifest.Entry entry = manifest.getEntries().get(file.path());
+            return entry == null || entry.getLastModified() != file.lastModified();
+        }).toList();
+
+        if (delta.isEmpty()) {
+            warnStale(removed, 0);
+            log.info("Gallery is up to date with the trained model");
+            return model;
+        }
+
+        log.info("Enrolling {} new or modified images", delta.size());
+
+        int replaced;
+        try (FaceRecognizerBackend.Trainer trainer = backend.trainer(true)) {
+            replaced = fit(trainer, delta, manifest);
+        }
+
+        warnStale(removed, replaced);
+
+        model.close();
+        return backend.load();
+    }
+
+    private void warnStale(long removed, int replaced) {
+        if (removed > 0 || replaced > 0) {
+            log.warn("{} images were removed from the gallery and {} replaced by different content, " +
+                    "their old faces stay in the model until the next full training", removed, replaced);
+        }
+    }
+
+    // Extracts the faces of files in parallel and trains or updates the recognizer with them,
+    // returns how many trained images of the manifest got new content
+    private int fit(FaceRecognizerBackend.Trainer trainer, List<TrainingImage> files,
+                     GalleryManifest manifest) throws IOException {
 
-                return new FaceRecognition.DetectedFaces(detectedPerson, detectionConfidence, faceRect);
-            } catch(Exception e) {
-                log.error("Error processing face detection", e);
-                throw new RuntimeException("Error processing face detection", e);
-            } finally {
-                matUtil.releaseResources(img);
+        int workers = netPool.getSize();
+        int maxInFlight = workers * 2; // bounds the decoded images held in memory at once
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CompletionService<TrainingFace> completionService = new ExecutorCompletionService<>(executor);
+
+        List<String> strLabels = manifest.getLabels();
+        Map<String, Integer> labelIds = new HashMap<>();
+        for (int i = 0; i < strLabels.size(); i++) {
+            labelIds.put(strLabels.get(i), i);
+        }
+
+        TrainingProgress progress = new TrainingProgress(files.size());
+        int replaced = 0;
+
+        try {
+            int submitted = 0, completed = 0;
+
+            while (completed < submitted || submitted < files.size()) {
+
+                while (submitted < files.size() && submitted - completed < maxInFlight) {
+                    TrainingImage file = files.get(submitted++);
+                    completionService.submit(() -> extractTrainingFace(file, manifest.getEntries().get(file.path())));
+                }
+
+                TrainingFace face = completionService.take().get();
+                completed++;
+
+                TrainingImage source = face.source();
+
+                GalleryManifest.Entry previous = manifest.getEntries().get(source.path());
+
+                if (face.unchanged()) {
+                    previous.setLastModified(source.lastModified());
+                    progress.skipped();
+                    continue;
+                }
+
+                if (previous != null && previous.getLabel() != GalleryManifest.NO_FACE) {
+                    replaced++;
+                }
+
+                if (face.image() == null) {
+                    manifest.getEntries().put(source.path(),
+                            new GalleryManifest.Entry(face.hash(), source.lastModified(), GalleryManifest.NO_FACE));
+                    progress.skipped();
+                    continue;
+                }
+
+                Integer label = labelIds.computeIfAbsent(source.personName(), name -> {
+                    strLabels.add(name);
+                    return strLabels.size() - 1;
+                });
+
+                trainer.add(face.image(), label);
+                matUtil.releaseResources(face.image());
+                face.image().close();
+
+                manifest.getEntries().put(source.path(),
+                        new GalleryManifest.Entry(face.hash(), source.lastModified(), label));
+
+                progress.trained();
             }
-        }).filter(detected -> detected != null).toList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error processing training image", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
 
-        return new FaceRecognition(detectedFaces, testImage);
+        progress.finish();
+
+        trainer.save(strLabels);
+
+        galleryManifestService.save(manifest);
+
+        return replaced;
     }
 
-    public FaceRecognizer train(String root) throws IOException {
-        Path rootFolder = Paths.get(root);
-        Map<Path, Object[]> fileList = Files.list(rootFolder).
-                filter(file -> file.toFile().isDirectory()).
-                flatMap(folder -> {
-                    try {
-                        var personName = folder.getName(folder.getNameCount()-1).toString();
-                        return Files.list(folder).map(file -> Map.entry(file, personName));
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+    // Expects one folder per person under root, the folder name being the person's name
+    private List<TrainingImage> listTrainingImages(Path rootFolder) throws IOException {
+        List<TrainingImage> files = new ArrayList<>();
+        try (Stream<Path> folders = Files.list(rootFolder)) {
+            for (Path folder : folders.filter(file -> file.toFile().isDirectory()).toList()) {
+                var personName = folder.getName(folder.getNameCount()-1).toString();
+                try (Stream<Path> images = Files.list(folder)) {
+                    for (Path file : images.toList()) {
+                        files.add(new TrainingImage(file.toAbsolutePath(), personName,
+                                Files.getLastModifiedTime(file).toMillis()));
                     }
-                }).
-                map(entry -> {
-                    File image = entry.getKey().toFile();
+                }
+            }
+        }
+        return files;
+    }
 
-                    Mat img = imread(image.getAbsolutePath()/*, IMREAD_GRAYSCALE*/);
+    // Returns the first face of the image as a fixed size grayscale crop, from the crop cache when possible
+    private TrainingFace extractTrainingFace(TrainingImage file, GalleryManifest.Entry previous) throws IOException {
 
-                    List<Rect> facesList = deepLearningFaceDetectionService.detect(img);
+        String hash = galleryManifestService.hash(file.path());
 
-                    if(facesList.isEmpty()) {
-                        return null;
-                    }
+        if (previous != null && previous.getHash().equals(hash)) {
+            return new TrainingFace(file, hash, null, true);
+        }
 
-                    Rect faceRect = facesList.get(0);
-                    Mat face = new Mat(img, faceRect);
+        Mat cached = galleryManifestService.loadCachedFace(hash);
+        if (cached != null) {
+            return new TrainingFace(file, hash, matUtil.track(MemorySubsystem.TRAIN, cached), false);
+        }
 
-                    matUtil.releaseResources(img);
+        Mat img = matUtil.track(MemorySubsystem.TRAIN, imread(file.path().toString()/*, IMREAD_GRAYSCALE*/));
 
-                    return Map.entry(entry.getKey(), new Object[]{face, entry.getValue()});
-                }).
-                filter(entry -> entry != null).
-                collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
+        try {
+            if (img.empty()) {
+                log.warn("Could not decode training image {}", file.path());
+                return new TrainingFace(file, hash, null, false);
+            }
 
-        MatVector images = new MatVector(fileList.size());
+            Mat face;
 
-        List<String> strLabels = fileList.values().stream().map(data -> (String)data[1]).distinct().toList();
+            // Frees the detected Rects right away, the crop is retained so it outlives the scope
+            try (PointerScope scope = new PointerScope()) {
+                List<Rect> facesList = deepLearningFaceDetectionService.detect(img);
 
-        Mat labels = new Mat(fileList.size(), 1, CV_32SC1);
-        IntBuffer labelsBuf = labels.createBuffer();
+                if (facesList.isEmpty()) {
+                    log.debug("No face found on training image {}", file.path());
+                    return new TrainingFace(file, hash, null, false);
+                }
 
-        final AtomicInteger counter = new AtomicInteger();
+                face = faceNormalizer.normalizeCopy(img, facesList.get(0));
 
-        fileList.keySet().forEach(path -> {
+                if (face == null) {
+                    log.debug("Face found on training image {} is outside of it", file.path());
+                    return new TrainingFace(file, hash, null, false);
+                }
 
-            Object[] data = fileList.get(path);
+                face = matUtil.track(MemorySubsystem.TRAIN, face).retainReference();
+            }
 
-            Mat img = matUtil.convertToGray((Mat)data[0]);
+            galleryManifestService.cacheFace(hash, face);
 
-            images.put(counter.get(), img);
+            return new TrainingFace(file, hash, face, false);
+        } finally {
+            matUtil.releaseResources(img);
+        }
+    }
 
-            int imgLabel = strLabels.indexOf(data[1]);
+    private record TrainingImage(Path path, String personName, long lastModified) {}
 
-            labelsBuf.put(counter.get(), imgLabel);
+    // image is null when no face was found or when the image is unchanged since it was trained
+    private record TrainingFace(TrainingImage source, String hash, Mat image, boolean unchanged) {}
 
-            counter.getAndIncrement();
-        });
+    private static class TrainingProgress {
+        private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
 
-//        FaceRecognizer faceRecognizer = FisherFaceRecognizer.create();
-//         FaceRecognizer faceRecognizer = EigenFaceRecognizer.create();
-        FaceRecognizer faceRecognizer = LBPHFaceRecognizer.create();
+        private final int total;
+        private final long startedAt = System.nanoTime();
+        private long lastReport = startedAt;
+        private int trained, skipped;
 
-        faceRecognizer.train(images, labels);
+        private TrainingProgress(int total) {
+            this.total = total;
+        }
 
-        strLabels.forEach(label -> {
-            faceRecognizer.setLabelInfo(strLabels.indexOf(label), new String(label.getBytes(UTF_8)));
-        });
+        private void trained() {
+            trained++;
+            report(false);
+        }
 
-        faceRecognizer.write(DATASET.toString());
+        private void skipped() {
+            skipped++;
+            report(false);
+        }
 
-        matUtil.clearMatVector(images);
+        private void finish() {
+            report(true);
+        }
 
-        return faceRecognizer;
+        private void report(boolean force) {
+            long now = System.nanoTime();
+            if (!force && now - lastReport < REPORT_INTERVAL_NANOS) {
+                return;
+            }
+            lastReport = now;
+            double seconds = Math.max(1e-9, (now - startedAt) / 1e9);
+            log.info("Training: {}/{} images processed ({} skipped without face), {} images/sec",
+                    trained + skipped, total, skipped, String.format("%.1f", (trained + skipped) / seconds));
+        }
     }
 }
@@ -0,0 +1,143 @@
+package com.icaroerasmo.service;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.model.GalleryManifest;
+import com.icaroerasmo.recognition.RecognitionBackend;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
+
+/**
+ * Keeps track of which gallery images are already part of the trained model
+ * and caches the face crop of every image by content hash, so retraining
+ * never decodes or runs detection on an image it has already seen.
+ * <p>
+ * The manifest is a tab separated file with one {@code L} line per label
+ * ({@code L id name}) followed by one {@code F} line per image
+ * ({@code F label lastModified hash path}).
+ * <p>
+ * Crops are cached per face normalization settings, so changing them makes
+ * the next training detect and crop every image again. Each recognition
+ * backend keeps its own manifest, since each one has its own model.
+ */
+@Log4j2
+@Service
+@RequiredArgsConstructor
+public class GalleryManifestService {
+
+    private static final String MANIFEST = "trained_manifest";
+    private static final Path FACE_CACHE = Paths.get("face_cache");
+
+    private final RecognitionProperties properties;
+
+    public GalleryManifest load() throws IOException {
+        Path file = manifest();
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        GalleryManifest manifest = new GalleryManifest();
+
+        List<String> lines = Files.readAllLines(file, UTF_8);
+        for (String line : lines) {
+            String[] fields = line.split("\t", 5);
+            switch (fields[0]) {
+                case "L" -> manifest.getLabels().add(Integer.parseInt(fields[1]), fields[2]);
+                case "F" -> manifest.getEntries().put(Paths.get(fields[4]),
+                        new GalleryManifest.Entry(fields[3], Long.parseLong(fields[2]), Integer.parseInt(fields[1])));
+                default -> log.warn("Ignoring unknown manifest line: {}", line);
+            }
+        }
+
+        return manifest;
+    }
+
+    public void save(GalleryManifest manifest) throws IOException {
+        Path file = manifest();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+            for (int i = 0; i < manifest.getLabels().size(); i++) {
+                writer.write("L\t" + i + "\t" + manifest.getLabels().get(i));
+                writer.newLine();
+            }
+            for (var entry : manifest.getEntries().entrySet()) {
+                GalleryManifest.Entry value = entry.getValue();
+                writer.write("F\t" + value.getLabel() + "\t" + value.getLastModified() + "\t" +
+                        value.getHash() + "\t" + entry.getKey());
+                writer.newLine();
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Returns the cached face crop of an image or null when it was never cropped
+    public Mat loadCachedFace(String hash) {
+        Path cached = faceCache().resolve(hash + ".png");
+        if (!Files.exists(cached)) {
+            return null;
+        }
+        Mat face = imread(cached.toString(), IMREAD_UNCHANGED);
+        if (face.empty()) {
+            face.close();
+            return null;
+        }
+        return face;
+    }
+
+    public void cacheFace(String hash, Mat face) throws IOException {
+        Path cache = faceCache();
+        Files.createDirectories(cache);
+        imwrite(cache.resolve(hash + ".png").toString(), face);
+    }
+
+    // The LBPH manifest keeps its original name
+    private Path manifest() {
+        RecognitionBackend backend = properties.getBackend();
+        return Paths.get(backend == RecognitionBackend.LBPH ? MANIFEST + ".tsv"
+                : MANIFEST + "-" + backend.name().toLowerCase(Locale.ROOT) + ".tsv");
+    }
+
+    private Path faceCache() {
+        RecognitionProperties.Face face = properties.getFace();
+        if (properties.getBackend() == RecognitionBackend.EMBEDDING) {
+            RecognitionProperties.Embedding embedding = properties.getEmbedding();
+            return FACE_CACHE.resolve(String.format(Locale.ROOT, "%dx%d-p%.2f-bgr",
+                    embedding.getInputWidth(), embedding.getInputHeight(), face.getPadding()));
+        }
+        return FACE_CACHE.resolve(String.format(Locale.ROOT, "%dx%d-p%.2f%s",
+                face.getWidth(), face.getHeight(), face.getPadding(), face.isEqualize() ? "-eq" : ""));
+    }
+}
@@ -1,55 +1,132 @@
 package com.icaroerasmo.service;
 
-import com.icaroerasmo.model.GifFrame;
-import lombok.SneakyThrows;
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.metrics.LatencyHistogram;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import com.icaroerasmo.metrics.TimedStage;
+import com.icaroerasmo.pipeline.DecodeSkip;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.collections4.QueueUtils;
-import org.apache.commons.collections4.queue.CircularFifoQueue;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
 import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static org.bytedeco.ffmpeg.global.avutil.AV_LOG_PANIC;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.ffmpeg.global.avutil.av_get_pix_fmt;
 import static org.bytedeco.ffmpeg.global.avutil.av_log_set_level;
-import static org.bytedeco.opencv.global.opencv_imgcodecs.imwrite;
 
 @Log4j2
 @Service
+@RequiredArgsConstructor
 public class RtspFrameExtractorService {
 
-    @SneakyThrows
-    public void extract(String rtspUrl, Consumer<Mat> consumer) {
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * Grabs frames until the stream ends or the thread is interrupted. Read
+     * and connection errors are thrown, reconnecting is up to the caller.
+     * Grab and convert times are recorded under the camera name.
+     */
+    public void extract(String camera, String url, PipelineProperties.Grabber options, Consumer<Mat> consumer) {
         av_log_set_level(AV_LOG_PANIC);
 
-        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(rtspUrl);
+        LatencyHistogram grabLatency = metricsRegistry.histogram(TimedStage.GRAB, camera);
+        LatencyHistogram convertLatency = metricsRegistry.histogram(TimedStage.CONVERT, camera);
+
+        FFmpegFrameGrabber grabber = createGrabber(url, options);
+        OpenCVFrameConverter converter = new OpenCVFrameConverter.ToMat();
 
         try {
 
-            grabber.start();
+            start(grabber, options);
 
-            OpenCVFrameConverter converter = new OpenCVFrameConverter.ToMat();
+            log.info("Grabbing {} at {}x{}", url, grabber.getImageWidth(), grabber.getImageHeight());
 
-            while(!grabber.isCloseInputStream()) {
-                Frame frame = grabber.grab();
-                if (frame != null && frame.image != null) {
+            while(!grabber.isCloseInputStream() && !Thread.currentThread().isInterrupted()) {
+                // Audio packets are skipped without being decoded
+                long startedAt = System.nanoTime();
+                Frame frame = grabber.grabImage();
+                if (frame == null) {
+                    // End of stream; the frame itself belongs to the grabber and is reused
+                    break;
+                }
+                if (frame.image != null) {
+                    grabLatency.recordSince(startedAt);
+                    startedAt = System.nanoTime();
                     Mat img = (Mat) converter.convert(frame);
+                    convertLatency.recordSince(startedAt);
                     consumer.accept(img);
                 }
-
-                frame.close();
             }
 
         } catch (FFmpegFrameGrabber.Exception e) {
             throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        } finally {
+            converter.close();
+            try {
+                grabber.close();
+            } catch (FrameGrabber.Exception e) {
+                log.warn("Could not release grabber for {}", url, e);
+            }
+        }
+    }
+
+    // Opens the input and applies the scaling options, which need the stream size
+    public void start(FFmpegFrameGrabber grabber, PipelineProperties.Grabber options) throws FFmpegFrameGrabber.Exception {
+        grabber.start();
+        scale(grabber, options);
+    }
+
+    public FFmpegFrameGrabber createGrabber(String url, PipelineProperties.Grabber options) {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(url);
+
+        if (url.startsWith("rtsp://") && options.getRtspTransport() != null) {
+            grabber.setOption("rtsp_transport", options.getRtspTransport());
+        }
+        if (options.getProbeSize() > 0) {
+            grabber.setOption("probesize", Long.toString(options.getProbeSize()));
+        }
+        if (options.getTimeoutMillis() > 0) {
+            grabber.setOption("rw_timeout", Long.toString(options.getTimeoutMillis() * 1000));
+        }
+        if (options.getAnalyzeDuration() > 0) {
+            grabber.setOption("analyzeduration", Long.toString(options.getAnalyzeDuration()));
+        }
+        options.getOptions().forEach(grabber::setOption);
+
+        if (options.getSkip() != DecodeSkip.NONE) {
+            grabber.setVideoOption("skip_frame", options.getSkip().getOption());
+        }
+
+        if (options.getPixelFormat() != null) {
+            // Everything after the grabber, the detector blob included, assumes 3 channel BGR
+            int pixelFormat = av_get_pix_fmt(options.getPixelFormat());
+            if (pixelFormat != AV_PIX_FMT_BGR24) {
+                throw new IllegalArgumentException("Unsupported pixel format " + options.getPixelFormat()
+                        + ", frames must decode to bgr24");
+            }
+            grabber.setPixelFormat(pixelFormat);
+        }
+
+        return grabber;
+    }
+
+    // swscale resizes while converting the pixel format, a missing dimension keeps the aspect ratio
+    private void scale(FFmpegFrameGrabber grabber, PipelineProperties.Grabber options) {
+        if (options.getWidth() <= 0 && options.getHeight() <= 0) {
+            return;
         }
+        int width = grabber.getImageWidth();
+        int height = grabber.getImageHeight();
+        grabber.setImageWidth(options.getWidth() > 0 ? options.getWidth()
+                : (int) Math.round((double) width * options.getHeight() / height));
+        grabber.setImageHeight(options.getHeight() > 0 ? options.getHeight()
+                : (int) Math.round((double) height * options.getWidth() / width));
     }
 }
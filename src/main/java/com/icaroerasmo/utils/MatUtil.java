@@ -1,5 +1,6 @@
 package com.icaroerasmo.utils;
 
+import lombok.RequiredArgsConstructor;
 import org.bytedeco.opencv.opencv_core.*;
 import org.springframework.stereotype.Component;
 
@@ -11,9 +12,21 @@ import static org.bytedeco.opencv.global.opencv_imgproc.putText;
 import static org.bytedeco.opencv.global.opencv_imgproc.rectangle;
 
 @Component
+@RequiredArgsConstructor
 public class MatUtil {
+
+    private final NativeMemoryTracker memoryTracker;
+
+    // Accounts mat to subsystem until it goes through releaseResources
+    public <T extends Mat> T track(MemorySubsystem subsystem, T mat) {
+        return memoryTracker.track(subsystem, mat);
+    }
+
     public void releaseResources(Mat... matArr) {
-        Arrays.asList(matArr).stream().filter(mat -> mat != null).forEach(Mat::release);
+        Arrays.asList(matArr).stream().filter(mat -> mat != null).forEach(mat -> {
+            memoryTracker.release(mat);
+            mat.release();
+        });
     }
 
     public Mat convertToGray(Mat testImage) {
@@ -0,0 +1,6 @@
+package com.icaroerasmo.utils;
+
+// Part of the application a tracked native allocation belongs to
+public enum MemorySubsystem {
+    DECODE, DETECT, RECOGNIZE, TRAIN, NOTIFY
+}
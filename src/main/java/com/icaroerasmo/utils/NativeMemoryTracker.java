@@ -0,0 +1,171 @@
+package com.icaroerasmo.utils;
+
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.metrics.MetricsSource;
+import com.icaroerasmo.metrics.MetricsWriter;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live native bytes and Mat counts per {@link MemorySubsystem}. Mats are
+ * registered when allocated and unregistered when released through
+ * {@link MatUtil}, so a subsystem whose live count keeps growing during a
+ * soak test is leaking. Sizes are taken when a Mat is registered.
+ * <p>
+ * In debug mode the stack trace of every allocation is kept and the ones
+ * alive for longer than the configured age are logged once. Resident
+ * buffers, which live as long as their owner, are never reported.
+ */
+@Log4j2
+@Component
+@RequiredArgsConstructor
+public class NativeMemoryTracker implements MetricsSource {
+
+    private final MemoryProperties properties;
+    private final Map<Long, Allocation> live = new ConcurrentHashMap<>();
+    private final Map<MemorySubsystem, Counters> counters = new EnumMap<>(MemorySubsystem.class);
+
+    {
+        for (MemorySubsystem subsystem : MemorySubsystem.values()) {
+            counters.put(subsystem, new Counters());
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isTracking();
+    }
+
+    public <T extends Mat> T track(MemorySubsystem subsystem, T mat) {
+        return register(subsystem, mat, false);
+    }
+
+    // Long lived buffers, accounted but never reported as leaks
+    public <T extends Mat> T trackResident(MemorySubsystem subsystem, T mat) {
+        return register(subsystem, mat, true);
+    }
+
+    public void release(Mat mat) {
+        if (!properties.isTracking() || mat == null || mat.isNull()) {
+            return;
+        }
+        Allocation allocation = live.remove(mat.address());
+        if (allocation != null) {
+            counters.get(allocation.getSubsystem()).released(allocation.getBytes());
+        }
+    }
+
+    public Usage usage(MemorySubsystem subsystem) {
+        Counters c = counters.get(subsystem);
+        return new Usage(c.liveCount.sum(), c.liveBytes.sum(), c.allocated.sum(), c.released.sum());
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        if (properties.isTracking()) {
+            for (MemorySubsystem subsystem : MemorySubsystem.values()) {
+                Usage usage = usage(subsystem);
+                String name = subsystem.name().toLowerCase();
+                writer.gauge("native_mats_live", "Tracked Mats not released yet", usage.liveCount(), "subsystem", name);
+                writer.gauge("native_mats_live_bytes", "Bytes of the tracked Mats not released yet", usage.liveBytes(),
+                        "subsystem", name);
+                writer.counter("native_mats_allocated", "Tracked Mat allocations", usage.allocated(), "subsystem", name);
+            }
+        }
+        writer.gauge("javacpp_tracked_bytes", "Native bytes allocated through JavaCPP", Pointer.totalBytes());
+        writer.gauge("javacpp_physical_bytes", "Resident memory of the process", Pointer.physicalBytes());
+    }
+
+    private <T extends Mat> T register(MemorySubsystem subsystem, T mat, boolean resident) {
+        if (!properties.isTracking() || mat == null || mat.isNull()) {
+            return mat;
+        }
+        long bytes = mat.total() * mat.elemSize();
+        Throwable trace = properties.isDebug() ? new Throwable("Allocated by " + Thread.currentThread().getName()) : null;
+        Allocation previous = live.put(mat.address(),
+                new Allocation(subsystem, bytes, System.nanoTime(), resident, trace));
+        // The address was reused, so the previous Mat was freed without going through MatUtil
+        if (previous != null) {
+            counters.get(previous.getSubsystem()).released(previous.getBytes());
+        }
+        counters.get(subsystem).allocated(bytes);
+        return mat;
+    }
+
+    @Scheduled(fixedDelayString = "${memory.report-millis:60000}")
+    private void report() {
+        if (!properties.isTracking()) {
+            return;
+        }
+
+        for (MemorySubsystem subsystem : MemorySubsystem.values()) {
+            Usage usage = usage(subsystem);
+            log.info("Native memory {}: {} live Mats, {} live, {} allocated, {} released",
+                    subsystem, usage.liveCount(), Pointer.formatBytes(usage.liveBytes()),
+                    usage.allocated(), usage.released());
+        }
+        log.info("Native memory JavaCPP: {} tracked, {} physical",
+                Pointer.formatBytes(Pointer.totalBytes()), Pointer.formatBytes(Pointer.physicalBytes()));
+
+        if (properties.isDebug()) {
+            reportLeaks();
+        }
+    }
+
+    private void reportLeaks() {
+        long maxAge = TimeUnit.SECONDS.toNanos(properties.getLeakAgeSeconds());
+        long now = System.nanoTime();
+        live.forEach((address, allocation) -> {
+            if (!allocation.isResident() && !allocation.isReported() && now - allocation.getAllocatedAt() > maxAge) {
+                allocation.setReported(true);
+                log.warn("{} Mat 0x{} of {} alive for {}s", allocation.getSubsystem(), Long.toHexString(address),
+                        Pointer.formatBytes(allocation.getBytes()),
+                        TimeUnit.NANOSECONDS.toSeconds(now - allocation.getAllocatedAt()), allocation.getTrace());
+            }
+        });
+    }
+
+    public record Usage(long liveCount, long liveBytes, long allocated, long released) {}
+
+    private static class Counters {
+        private final LongAdder liveCount = new LongAdder();
+        private final LongAdder liveBytes = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+        private final LongAdder released = new LongAdder();
+
+        void allocated(long bytes) {
+            liveCount.increment();
+            liveBytes.add(bytes);
+            allocated.increment();
+        }
+
+        void released(long bytes) {
+            liveCount.decrement();
+            liveBytes.add(-bytes);
+            released.increment();
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class Allocation {
+        private final MemorySubsystem subsystem;
+        private final long bytes;
+        private final long allocatedAt;
+        private final boolean resident;
+        private final Throwable trace;
+        @Setter
+        private volatile boolean reported;
+    }
+}
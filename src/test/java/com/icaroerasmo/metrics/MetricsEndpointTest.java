@@ -0,0 +1,57 @@
+package com.icaroerasmo.metrics;
+
+import com.icaroerasmo.config.MetricsProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+class MetricsEndpointTest {
+
+    private final MetricsSource source = writer -> writer.gauge("test_value", "A test gauge", 42);
+
+    @Test
+    void servesTheSources() throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        MetricsEndpoint endpoint = new MetricsEndpoint(properties(port), List.of(source));
+        endpoint.start();
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body()).contains("test_value 42");
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+    @Test
+    void portInUseDoesNotFailStartup() throws IOException {
+        try (ServerSocket taken = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            MetricsEndpoint endpoint = new MetricsEndpoint(properties(taken.getLocalPort()), List.of(source));
+
+            assertThatCode(endpoint::start).doesNotThrowAnyException();
+            assertThatCode(endpoint::stop).doesNotThrowAnyException();
+        }
+    }
+
+    private static MetricsProperties properties(int port) {
+        MetricsProperties properties = new MetricsProperties();
+        properties.setPort(port);
+        return properties;
+    }
+}
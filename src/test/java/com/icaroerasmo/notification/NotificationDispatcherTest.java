@@ -0,0 +1,195 @@
+package com.icaroerasmo.notification;
+
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.config.NotificationProperties;
+import com.icaroerasmo.utils.MatUtil;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * Runs the dispatcher and the real Telegram client against a local HTTP
+ * server standing in for the Bot API.
+ */
+class NotificationDispatcherTest {
+
+    private static final String OK = "{\"ok\":true,\"result\":{\"message_id\":1,\"date\":0,"
+            + "\"chat\":{\"id\":1,\"type\":\"private\"}}}";
+    private static final String TOO_MANY_REQUESTS = "{\"ok\":false,\"error_code\":429,"
+            + "\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}";
+
+    private final List<Request> received = new CopyOnWriteArrayList<>();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final NotificationProperties properties = new NotificationProperties();
+
+    private HttpServer telegram;
+    private TelegramNotificationSender sender;
+    private NotificationDispatcher dispatcher;
+    private Mat image;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        telegram = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        telegram.createContext("/", this::answer);
+        telegram.start();
+
+        properties.setEnabled(true);
+        properties.getTelegram().setBotToken("token");
+        properties.getTelegram().setChatId("1");
+        properties.getTelegram().setApiUrl("http://127.0.0.1:" + telegram.getAddress().getPort() + "/bot");
+        properties.getClip().setFormat(ClipFormat.JPEG);
+        properties.getClip().setPostEventSeconds(0);
+        properties.setMessagesPerMinute(6000);
+        properties.setRetryBackoffMillis(50);
+
+        image = new Mat(120, 160, CV_8UC3, Scalar.all(90));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+        if (sender != null) {
+            sender.close();
+        }
+        telegram.stop(0);
+        image.close();
+    }
+
+    @Test
+    void announcementsWithinTheWindowGoOutAsOneMessage() throws InterruptedException {
+        properties.getClip().setPostEventSeconds(1);
+        start();
+
+        dispatcher.notify("door", "ana", 30.0, image);
+        dispatcher.notify("door", "ana", 20.0, image);
+        dispatcher.notify("door", "ana", 25.0, image);
+        dispatcher.notify("door", "bob", 40.0, image);
+
+        await(() -> dispatcher.getSent() == 2);
+        Thread.sleep(300);
+
+        assertThat(received).hasSize(2);
+        assertThat(received).allMatch(request -> request.path().endsWith("/sendPhoto"));
+        assertThat(received).anyMatch(request -> request.body().contains("ana (3 detecções, confiança: 20.0)"));
+        assertThat(received).anyMatch(request -> request.body().contains("bob (1 detecções, confiança: 40.0)"));
+    }
+
+    @Test
+    void messagesAreSpacedByTheRateLimit() {
+        properties.setMessagesPerMinute(120);
+        start();
+
+        dispatcher.notify("door", "ana", 10.0, image);
+        dispatcher.notify("door", "bob", 10.0, image);
+        dispatcher.notify("door", "carla", 10.0, image);
+
+        await(() -> dispatcher.getSent() == 3);
+
+        for (int i = 1; i < received.size(); i++) {
+            long gap = received.get(i).receivedAt() - received.get(i - 1).receivedAt();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(gap)).isGreaterThanOrEqualTo(450);
+        }
+    }
+
+    @Test
+    void failedMessagesAreRetriedAfterTheRequestedDelay() {
+        failures.add(TOO_MANY_REQUESTS);
+        start();
+
+        dispatcher.notify("door", "ana", 10.0, image);
+
+        await(() -> dispatcher.getSent() == 1);
+
+        assertThat(received).hasSize(2);
+        long gap = received.get(1).receivedAt() - received.get(0).receivedAt();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(gap)).isGreaterThanOrEqualTo(950);
+        assertThat(dispatcher.getDropped()).isZero();
+    }
+
+    @Test
+    void messagesAreDroppedAfterTheLastAttempt() {
+        properties.setMaxAttempts(2);
+        failures.add("{\"ok\":false,\"error_code\":500,\"description\":\"Internal Server Error\"}");
+        failures.add("{\"ok\":false,\"error_code\":500,\"description\":\"Internal Server Error\"}");
+        start();
+
+        dispatcher.notify("door", "ana", 10.0, image);
+
+        await(() -> dispatcher.getDropped() == 1);
+        assertThat(received).hasSize(2);
+        assertThat(dispatcher.getSent()).isZero();
+    }
+
+    @Test
+    void burstIsForgottenOnceItsWindowIsFlushed() {
+        properties.setCooldownSeconds(1);
+        start();
+
+        dispatcher.notify("door", "ana", 10.0, image);
+        assertThat(dispatcher.getOpenBursts()).isEqualTo(1);
+
+        await(() -> dispatcher.getSent() == 1);
+        await(() -> dispatcher.getOpenBursts() == 0);
+
+        // a new window opens a new message
+        dispatcher.notify("door", "ana", 10.0, image);
+        await(() -> dispatcher.getSent() == 2);
+    }
+
+    private void start() {
+        MatUtil matUtil = new MatUtil(new NativeMemoryTracker(new MemoryProperties()));
+        sender = new TelegramNotificationSender(properties);
+        dispatcher = new NotificationDispatcher(properties, new ClipEncoder(), sender, matUtil);
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            received.add(new Request(exchange.getRequestURI().getPath(), body, System.nanoTime()));
+
+            String failure = failures.poll();
+            byte[] response = (failure != null ? failure : OK).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(failure != null ? 429 : 200, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out").isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private record Request(String path, String body, long receivedAt) {}
+}
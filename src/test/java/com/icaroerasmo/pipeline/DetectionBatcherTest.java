@@ -0,0 +1,124 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.DetectionProperties;
+import com.icaroerasmo.service.DeepLearningFaceDetectionService;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DetectionBatcherTest {
+
+    private final BlockingDetectionService detectionService = new BlockingDetectionService();
+    private final DetectionBatcher batcher = new DetectionBatcher(detectionService, properties());
+
+    @AfterEach
+    void tearDown() {
+        detectionService.running.release(100);
+        batcher.stop();
+    }
+
+    @Test
+    void interruptedCallerWaitsForTheBatchHoldingItsFrame() throws InterruptedException {
+        Mat frame = new Mat();
+        Caller caller = new Caller(frame);
+        caller.start();
+        assertThat(detectionService.started.tryAcquire(5, TimeUnit.SECONDS)).isTrue();
+
+        caller.interrupt();
+        caller.join(300);
+        // still inside the batch, returning now would let the caller release the frame
+        assertThat(caller.isAlive()).isTrue();
+
+        detectionService.running.release();
+        caller.join(5000);
+
+        assertThat(caller.isAlive()).isFalse();
+        assertThat(caller.error.get()).isInstanceOf(InterruptedException.class);
+        assertThat(detectionService.seen).containsExactly(frame);
+    }
+
+    @Test
+    void interruptedCallerTakesItsQueuedFrameBack() throws InterruptedException {
+        Mat busy = new Mat();
+        Mat queued = new Mat();
+        Caller first = new Caller(busy);
+        first.start();
+        assertThat(detectionService.started.tryAcquire(5, TimeUnit.SECONDS)).isTrue();
+
+        // the only worker is busy, so this frame waits in the queue
+        Caller second = new Caller(queued);
+        second.start();
+        second.submitted.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        second.interrupt();
+        second.join(5000);
+
+        assertThat(second.isAlive()).isFalse();
+        assertThat(second.error.get()).isInstanceOf(InterruptedException.class);
+
+        detectionService.running.release();
+        first.join(5000);
+        assertThat(first.error.get()).isNull();
+        assertThat(detectionService.seen).containsExactly(busy);
+    }
+
+    private DetectionProperties properties() {
+        DetectionProperties properties = new DetectionProperties();
+        properties.getBatch().setEnabled(true);
+        properties.getBatch().setMaxSize(1);
+        properties.getBatch().setWorkers(1);
+        return properties;
+    }
+
+    private class Caller extends Thread {
+        private final Mat frame;
+        private final CountDownLatch submitted = new CountDownLatch(1);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        private Caller(Mat frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public void run() {
+            try {
+                submitted.countDown();
+                batcher.detect(frame);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        }
+    }
+
+    // Holds every batch until the test lets it finish
+    private static class BlockingDetectionService extends DeepLearningFaceDetectionService {
+        private final List<Mat> seen = new CopyOnWriteArrayList<>();
+        private final Semaphore started = new Semaphore(0);
+        private final Semaphore running = new Semaphore(0);
+
+        private BlockingDetectionService() {
+            super(null, null);
+        }
+
+        @Override
+        public List<List<Rect>> detectBatch(List<Mat> testImages) {
+            seen.addAll(testImages);
+            started.release();
+            running.acquireUninterruptibly();
+            List<List<Rect>> faces = new ArrayList<>();
+            testImages.forEach(image -> faces.add(List.of()));
+            return faces;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.icaroerasmo.pipeline;
+
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.model.FaceRecognition;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FaceTrackerTest {
+
+    private final PipelineProperties.Tracking tracking = new PipelineProperties.Tracking();
+    private final List<Rect> recognized = new ArrayList<>();
+    private final Function<Rect, FaceRecognition.DetectedFaces> recognizer = rect -> {
+        recognized.add(rect);
+        return new FaceRecognition.DetectedFaces("ana", 10.0, rect, FaceRecognition.DetectedFaces.UNTRACKED);
+    };
+
+    @Test
+    void movingFaceKeepsItsTrackAndCachedResult() {
+        FaceTracker tracker = new FaceTracker(tracking);
+
+        FaceRecognition.DetectedFaces first = single(tracker.track(0, List.of(new Rect(100, 100, 50, 50)), recognizer));
+        FaceRecognition.DetectedFaces second = single(tracker.track(1, List.of(new Rect(104, 102, 50, 50)), recognizer));
+
+        assertThat(second.getTrackId()).isEqualTo(first.getTrackId());
+        assertThat(second.getPersonName()).isEqualTo("ana");
+        assertThat(recognized).hasSize(1);
+        assertThat(tracker.size()).isEqualTo(1);
+    }
+
+    @Test
+    void facesFarApartGetTheirOwnTracks() {
+        FaceTracker tracker = new FaceTracker(tracking);
+
+        List<FaceRecognition.DetectedFaces> faces = tracker.track(0,
+                List.of(new Rect(0, 0, 50, 50), new Rect(300, 300, 50, 50)), recognizer);
+
+        assertThat(faces).extracting(FaceRecognition.DetectedFaces::getTrackId).doesNotHaveDuplicates();
+        assertThat(tracker.size()).isEqualTo(2);
+    }
+
+    @Test
+    void largeMoveRunsTheRecognizerAgainOnTheSameTrack() {
+        tracking.setMatchIou(0.1);
+        FaceTracker tracker = new FaceTracker(tracking);
+
+        long id = single(tracker.track(0, List.of(new Rect(100, 100, 50, 50)), recognizer)).getTrackId();
+        // still matches the track, but overlaps less than reverifyIou with the recognized box
+        long next = single(tracker.track(1, List.of(new Rect(125, 100, 50, 50)), recognizer)).getTrackId();
+
+        assertThat(next).isEqualTo(id);
+        assertThat(recognized).hasSize(2);
+    }
+
+    @Test
+    void expiredTrackIsReplaced() {
+        tracking.setMaxMissedFrames(3);
+        FaceTracker tracker = new FaceTracker(tracking);
+        Rect face = new Rect(100, 100, 50, 50);
+
+        long id = single(tracker.track(0, List.of(face), recognizer)).getTrackId();
+        long kept = single(tracker.track(4, List.of(face), recognizer)).getTrackId();
+        long replaced = single(tracker.track(9, List.of(face), recognizer)).getTrackId();
+
+        assertThat(kept).isEqualTo(id);
+        assertThat(replaced).isNotEqualTo(id);
+        assertThat(tracker.size()).isEqualTo(1);
+    }
+
+    @Test
+    void skippedSequencesCountAsMisses() {
+        tracking.setMaxMissedFrames(3);
+        FaceTracker tracker = new FaceTracker(tracking);
+
+        tracker.track(0, List.of(new Rect(100, 100, 50, 50)), recognizer);
+        tracker.track(5, List.of(new Rect(400, 400, 50, 50)), recognizer);
+
+        assertThat(tracker.size()).isEqualTo(1);
+    }
+
+    @Test
+    void lateFrameIsRecognizedWithoutTracking() {
+        FaceTracker tracker = new FaceTracker(tracking);
+        Rect face = new Rect(100, 100, 50, 50);
+
+        tracker.track(5, List.of(face), recognizer);
+        FaceRecognition.DetectedFaces late = single(tracker.track(4, List.of(face), recognizer));
+
+        assertThat(late.getTrackId()).isEqualTo(FaceRecognition.DetectedFaces.UNTRACKED);
+        assertThat(recognized).hasSize(2);
+        assertThat(tracker.size()).isEqualTo(1);
+    }
+
+    private static FaceRecognition.DetectedFaces single(List<FaceRecognition.DetectedFaces> faces) {
+        assertThat(faces).hasSize(1);
+        return faces.get(0);
+    }
+}
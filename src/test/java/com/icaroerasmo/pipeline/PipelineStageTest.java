@@ -0,0 +1,59 @@
+package com.icaroerasmo.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineStageTest {
+
+    @Test
+    void resultIsDiscardedWhenTheHandOverIsInterrupted() throws InterruptedException {
+        List<String> errors = new CopyOnWriteArrayList<>();
+        List<String> discarded = new CopyOnWriteArrayList<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+
+        StageQueue<String> input = new StageQueue<>(4, BackpressurePolicy.BLOCK, item -> {});
+        StageSink<String> downstream = item -> {
+            blocked.countDown();
+            // Full BLOCK queue, only an interrupt gets the worker out
+            new CountDownLatch(1).await();
+        };
+        PipelineStage<String, String> stage = new PipelineStage<>("test", input, 1,
+                item -> item + "-result", downstream, errors::add, discarded::add);
+
+        stage.start();
+        input.put("frame");
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        stage.stop();
+
+        assertThat(discarded).containsExactly("frame-result");
+        assertThat(errors).isEmpty();
+    }
+
+    @Test
+    void inputIsReleasedWhenTheHandlerFails() throws InterruptedException {
+        List<String> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch failed = new CountDownLatch(1);
+
+        StageQueue<String> input = new StageQueue<>(4, BackpressurePolicy.BLOCK, item -> {});
+        PipelineStage<String, String> stage = new PipelineStage<>("test", input, 1,
+                item -> {
+                    throw new IllegalStateException("boom");
+                }, item -> {}, item -> {
+                    errors.add(item);
+                    failed.countDown();
+                }, item -> {});
+
+        stage.start();
+        input.put("frame");
+        assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+        stage.stop();
+
+        assertThat(errors).containsExactly("frame");
+    }
+}
@@ -0,0 +1,101 @@
+package com.icaroerasmo.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StageQueueTest {
+
+    private final List<Integer> released = new ArrayList<>();
+
+    @Test
+    void dropOldestEvictsTheOldestItem() throws InterruptedException {
+        StageQueue<Integer> queue = new StageQueue<>(2, BackpressurePolicy.DROP_OLDEST, released::add);
+
+        queue.put(1);
+        queue.put(2);
+        queue.put(3);
+
+        assertThat(released).containsExactly(1);
+        assertThat(queue.getDropped()).isEqualTo(1);
+        assertThat(queue.take()).isEqualTo(2);
+        assertThat(queue.take()).isEqualTo(3);
+    }
+
+    @Test
+    void dropNewestDiscardsTheIncomingItem() throws InterruptedException {
+        StageQueue<Integer> queue = new StageQueue<>(2, BackpressurePolicy.DROP_NEWEST, released::add);
+
+        queue.put(1);
+        queue.put(2);
+        queue.put(3);
+
+        assertThat(released).containsExactly(3);
+        assertThat(queue.getDropped()).isEqualTo(1);
+        assertThat(queue.take()).isEqualTo(1);
+        assertThat(queue.take()).isEqualTo(2);
+    }
+
+    @Test
+    void blockWaitsForRoomWithoutDropping() throws InterruptedException {
+        StageQueue<Integer> queue = new StageQueue<>(1, BackpressurePolicy.BLOCK, released::add);
+        queue.put(1);
+
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(2);
+                done.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        assertThat(done.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(queue.take()).isEqualTo(1);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queue.take()).isEqualTo(2);
+        assertThat(released).isEmpty();
+        assertThat(queue.getDropped()).isZero();
+    }
+
+    @Test
+    void blockedPutThrowsWhenInterrupted() throws InterruptedException {
+        StageQueue<Integer> queue = new StageQueue<>(1, BackpressurePolicy.BLOCK, released::add);
+        queue.put(1);
+
+        List<Throwable> errors = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(2);
+            } catch (InterruptedException e) {
+                errors.add(e);
+            }
+        });
+        producer.start();
+        producer.interrupt();
+        producer.join(5000);
+
+        assertThat(errors).hasSize(1);
+        assertThat(queue.size()).isEqualTo(1);
+    }
+
+    @Test
+    void clearReleasesQueuedItemsWithoutCountingThemAsDrops() throws InterruptedException {
+        StageQueue<Integer> queue = new StageQueue<>(4, BackpressurePolicy.DROP_OLDEST, released::add);
+        queue.put(1);
+        queue.put(2);
+
+        queue.clear();
+
+        assertThat(released).containsExactly(1, 2);
+        assertThat(queue.size()).isZero();
+        assertThat(queue.getDropped()).isZero();
+    }
+}
@@ -0,0 +1,62 @@
+package com.icaroerasmo.recognition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingModelFileTest {
+
+    private static final int DIMS = 7;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void galleryIsReadBackAsItWasWritten() throws IOException {
+        Path file = directory.resolve("embeddings.bin");
+        int[] labels = {0, 2, 1, 0};
+        float[] vectors = new float[labels.length * DIMS];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (i - 10) / 7f;
+        }
+        List<String> names = List.of("João", "Zoë Müller", "李小龙");
+
+        EmbeddingModelFile.write(file, new EmbeddingModelFile.Contents(DIMS, labels, names, vectors));
+
+        EmbeddingModelFile.Contents contents = EmbeddingModelFile.read(file);
+        assertThat(contents.dimensions()).isEqualTo(DIMS);
+        assertThat(contents.count()).isEqualTo(4);
+        assertThat(contents.labels()).containsExactly(labels);
+        assertThat(contents.personNames()).containsExactlyElementsOf(names);
+        assertThat(contents.vectors()).containsExactly(vectors);
+        assertThat(Files.exists(directory.resolve("embeddings.bin.tmp"))).isFalse();
+    }
+
+    @Test
+    void emptyGalleryCanBeWrittenAndRead() throws IOException {
+        Path file = directory.resolve("embeddings.bin");
+
+        EmbeddingModelFile.write(file, new EmbeddingModelFile.Contents(DIMS, new int[0], List.of(), new float[0]));
+
+        EmbeddingModelFile.Contents contents = EmbeddingModelFile.read(file);
+        assertThat(contents.count()).isZero();
+        assertThat(contents.dimensions()).isEqualTo(DIMS);
+        assertThat(contents.personNames()).isEmpty();
+        assertThat(contents.vectors()).isEmpty();
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = directory.resolve("embeddings.bin");
+        Files.write(file, new byte[EmbeddingModelFile.HEADER_SIZE]);
+
+        assertThatThrownBy(() -> EmbeddingModelFile.read(file)).isInstanceOf(IOException.class);
+    }
+}
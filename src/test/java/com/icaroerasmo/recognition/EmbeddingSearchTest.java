@@ -0,0 +1,154 @@
+package com.icaroerasmo.recognition;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * {@link EmbeddingModel#search} must rank labels like a brute force search
+ * over the gallery, with either scorer.
+ */
+class EmbeddingSearchTest {
+
+    private static final int FACES = 200;
+    private static final int PEOPLE = 10;
+    // Not a multiple of any vector length, so the scorers' tails are exercised
+    private static final int DIMS = 131;
+
+    private final Random random = new Random(42);
+    private EmbeddingModelFile.Contents contents;
+
+    @BeforeEach
+    void setUp() {
+        int[] labels = new int[FACES];
+        float[] vectors = new float[FACES * DIMS];
+        for (int i = 0; i < FACES; i++) {
+            labels[i] = i % PEOPLE;
+            System.arraycopy(normalized(gaussian()), 0, vectors, i * DIMS, DIMS);
+        }
+        List<String> names = new ArrayList<>();
+        for (int label = 0; label < PEOPLE; label++) {
+            names.add("person" + label);
+        }
+        contents = new EmbeddingModelFile.Contents(DIMS, labels, names, vectors);
+    }
+
+    @Test
+    void searchKeepsTheClosestEmbeddingOfEachLabel() {
+        EmbeddingModel model = model(new ScalarEmbeddingScorer(), Double.MAX_VALUE);
+
+        for (int q = 0; q < 5; q++) {
+            float[] query = query(q * 37);
+            TopK topK = model.search(query, PEOPLE);
+
+            assertThat(topK.getSize()).isEqualTo(PEOPLE);
+            Set<Integer> labels = new HashSet<>();
+            for (int i = 0; i < topK.getSize(); i++) {
+                assertThat(labels.add(topK.label(i))).as("label %d listed twice", topK.label(i)).isTrue();
+            }
+            assertRanking(topK, bruteForce(query, PEOPLE, Double.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void searchLeavesOutDistancesAboveTheThreshold() {
+        float[] query = query(0);
+        List<Map.Entry<Integer, Double>> all = bruteForce(query, PEOPLE, Double.MAX_VALUE);
+        // Between the closest label and the rest, which are all near 1 for random vectors
+        double threshold = (all.get(0).getValue() + all.get(1).getValue()) / 2;
+
+        TopK topK = model(new ScalarEmbeddingScorer(), threshold).search(query, 3);
+
+        assertThat(topK.getSize()).isEqualTo(1);
+        assertThat(topK.label(0)).isEqualTo(0);
+        assertThat(topK.distance(0)).isLessThan(threshold);
+    }
+
+    @Test
+    void scalarAndVectorScorersRankAlike() {
+        EmbeddingScorer vector = EmbeddingScorer.create(true);
+        assertThat(vector).isInstanceOf(VectorEmbeddingScorer.class);
+
+        EmbeddingModel scalarModel = model(new ScalarEmbeddingScorer(), 0.99);
+        EmbeddingModel vectorModel = model(vector, 0.99);
+
+        for (int q = 0; q < 10; q++) {
+            float[] query = query(q * 19);
+            TopK scalar = scalarModel.search(query, 5);
+            TopK simd = vectorModel.search(query, 5);
+
+            assertThat(simd.getSize()).isEqualTo(scalar.getSize());
+            for (int i = 0; i < scalar.getSize(); i++) {
+                assertThat(simd.label(i)).isEqualTo(scalar.label(i));
+                assertThat(simd.distance(i)).isCloseTo(scalar.distance(i), within(1e-5));
+            }
+        }
+    }
+
+    private EmbeddingModel model(EmbeddingScorer scorer, double threshold) {
+        return new EmbeddingModel(contents, DIMS, threshold, null, scorer);
+    }
+
+    // A gallery face with a little noise, so its own label is clearly the closest
+    private float[] query(int face) {
+        float[] query = gaussian();
+        for (int j = 0; j < DIMS; j++) {
+            query[j] = contents.vectors()[face * DIMS + j] + query[j] * 0.02f;
+        }
+        return normalized(query);
+    }
+
+    private List<Map.Entry<Integer, Double>> bruteForce(float[] query, int k, double threshold) {
+        Map<Integer, Double> closest = new HashMap<>();
+        for (int i = 0; i < FACES; i++) {
+            double dot = 0;
+            for (int j = 0; j < DIMS; j++) {
+                dot += (double) query[j] * contents.vectors()[i * DIMS + j];
+            }
+            closest.merge(contents.labels()[i], 1 - dot, Math::min);
+        }
+        return closest.entrySet().stream()
+                .filter(entry -> entry.getValue() < threshold)
+                .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+                .limit(k)
+                .toList();
+    }
+
+    private static void assertRanking(TopK topK, List<Map.Entry<Integer, Double>> expected) {
+        assertThat(topK.getSize()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(topK.label(i)).isEqualTo(expected.get(i).getKey());
+            assertThat(topK.distance(i)).isCloseTo(expected.get(i).getValue(), within(1e-5));
+        }
+    }
+
+    private float[] gaussian() {
+        float[] vector = new float[DIMS];
+        for (int j = 0; j < DIMS; j++) {
+            vector[j] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        for (int j = 0; j < vector.length; j++) {
+            vector[j] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,70 @@
+package com.icaroerasmo.recognition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LbphModelFileTest {
+
+    private static final int DIMS = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendKeepsTheStoredHistogramsAndAddsTheNewOnes() throws IOException {
+        Path file = directory.resolve("model.bin");
+        float[][] stored = {histogram(1), histogram(2)};
+        LbphModelFile.write(file, 1, 8, 8, 8, 123.0, DIMS, new int[]{0, 1}, List.of("ana", "bob"),
+                i -> FloatBuffer.wrap(stored[i]));
+
+        float[][] added = {histogram(3), histogram(4)};
+        LbphModelFile.append(file, new int[]{2, 0}, List.of("ana", "bob", "carla"),
+                i -> FloatBuffer.wrap(added[i]));
+
+        LbphBinaryModel model = LbphBinaryModel.open(file, null);
+        assertThat(model.getCount()).isEqualTo(4);
+        assertThat(model.getDimensions()).isEqualTo(DIMS);
+        assertThat(model.getThreshold()).isEqualTo(123.0);
+        assertThat(model.getLabels()).containsExactly(0, 1, 2, 0);
+        assertThat(model.getPersonNames()).containsExactly("ana", "bob", "carla");
+        assertThat(values(model, 0)).containsExactly(histogram(1));
+        assertThat(values(model, 1)).containsExactly(histogram(2));
+        assertThat(values(model, 2)).containsExactly(histogram(3));
+        assertThat(values(model, 3)).containsExactly(histogram(4));
+    }
+
+    @Test
+    void emptyModelCanBeOpenedAndAppendedTo() throws IOException {
+        Path file = directory.resolve("model.bin");
+        LbphModelFile.write(file, 1, 8, 8, 8, Double.MAX_VALUE, DIMS, new int[0], List.of(), i -> null);
+
+        assertThat(LbphBinaryModel.open(file, null).getCount()).isZero();
+
+        LbphModelFile.append(file, new int[]{0}, List.of("ana"), i -> FloatBuffer.wrap(histogram(7)));
+
+        LbphBinaryModel model = LbphBinaryModel.open(file, null);
+        assertThat(model.getLabels()).containsExactly(0);
+        assertThat(values(model, 0)).containsExactly(histogram(7));
+    }
+
+    private static float[] histogram(int seed) {
+        float[] histogram = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) {
+            histogram[i] = seed + i / 10f;
+        }
+        return histogram;
+    }
+
+    private static float[] values(LbphBinaryModel model, int i) {
+        float[] values = new float[DIMS];
+        model.histogram(i).get(values);
+        return values;
+    }
+}
@@ -0,0 +1,195 @@
+package com.icaroerasmo.recognition;
+
+import com.icaroerasmo.config.RecognitionProperties;
+import com.icaroerasmo.model.Prediction;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+import org.bytedeco.opencv.global.opencv_face;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.bytedeco.opencv.global.opencv_core.CV_32SC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The scalar, vector and parallel scans of {@link LbphSearchEngine} must
+ * find the same nearest histogram as a brute force search and as OpenCV's
+ * own LBPHFaceRecognizer.
+ */
+class LbphSearchParityTest {
+
+    private static final int FACES = 240;
+    private static final int PEOPLE = 12;
+    private static final int SIZE = 48;
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+    private final List<byte[]> faces = new ArrayList<>();
+    private final List<LbphSearchEngine> engines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < FACES; i++) {
+            byte[] face = new byte[SIZE * SIZE];
+            random.nextBytes(face);
+            faces.add(face);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        engines.forEach(LbphSearchEngine::stop);
+    }
+
+    @Test
+    void everyScanMatchesBruteForce() throws IOException {
+        int dims = LbphHistogram.dimensions(8, 8, 8);
+        float[][] histograms = new float[FACES][];
+        int[] labels = new int[FACES];
+        for (int i = 0; i < FACES; i++) {
+            histograms[i] = LbphHistogram.compute(faces.get(i), SIZE, SIZE, 1, 8, 8, 8);
+            labels[i] = i % PEOPLE;
+        }
+        Path file = directory.resolve("gallery.bin");
+        LbphModelFile.write(file, 1, 8, 8, 8, Double.MAX_VALUE, dims, labels, names(),
+                i -> FloatBuffer.wrap(histograms[i]));
+        LbphBinaryModel model = LbphBinaryModel.open(file, null);
+
+        for (int q = 0; q < 5; q++) {
+            float[] query = LbphHistogram.compute(noisy(faces.get(q * 37)), SIZE, SIZE, 1, 8, 8, 8);
+
+            int nearest = -1;
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < FACES; i++) {
+                double distance = chiSquare(query, histograms[i]);
+                if (distance < best) {
+                    best = distance;
+                    nearest = i;
+                }
+            }
+
+            for (LbphSearchEngine engine : List.of(scalar(), vector(), parallel())) {
+                TopK topK = engine.search(model, query, 1);
+                assertThat(topK.label(0)).as(engine.getScorer().getClass().getSimpleName()).isEqualTo(labels[nearest]);
+                assertThat(topK.distance(0)).isCloseTo(best, within(best * 1e-9));
+            }
+        }
+    }
+
+    @Test
+    void everyScanMatchesOpenCvPredict() throws IOException {
+        assumeTrue(opencvFaceAvailable(), "opencv_face natives cannot be loaded");
+
+        MatVector images = new MatVector(FACES);
+        Mat labels = new Mat(FACES, 1, CV_32SC1);
+        IntBuffer labelsBuf = labels.createBuffer();
+        for (int i = 0; i < FACES; i++) {
+            images.put(i, mat(faces.get(i)));
+            labelsBuf.put(i, i % PEOPLE);
+        }
+
+        try (LBPHFaceRecognizer faceRecognizer = LBPHFaceRecognizer.create()) {
+            faceRecognizer.train(images, labels);
+            Path file = directory.resolve("gallery.bin");
+            LbphModelFile.write(faceRecognizer, file);
+
+            for (int q = 0; q < 5; q++) {
+                Mat query = mat(noisy(faces.get(q * 37)));
+                int[] label = new int[1];
+                double[] confidence = new double[1];
+                faceRecognizer.predict(query, label, confidence);
+
+                for (LbphSearchEngine engine : List.of(scalar(), vector(), parallel())) {
+                    Prediction prediction = LbphBinaryModel.open(file, engine).predict(query);
+                    assertThat(prediction.getLabel()).isEqualTo(label[0]);
+                    assertThat(prediction.getDistance()).isCloseTo(confidence[0], within(confidence[0] * 1e-6));
+                }
+            }
+        }
+    }
+
+    private LbphSearchEngine scalar() {
+        return engine(false, 1);
+    }
+
+    private LbphSearchEngine vector() {
+        LbphSearchEngine engine = engine(true, 1);
+        assertThat(engine.getScorer()).isInstanceOf(VectorHistogramScorer.class);
+        return engine;
+    }
+
+    private LbphSearchEngine parallel() {
+        return engine(true, 4);
+    }
+
+    private LbphSearchEngine engine(boolean vectorized, int threads) {
+        RecognitionProperties properties = new RecognitionProperties();
+        properties.setVectorized(vectorized);
+        properties.setSearchThreads(threads);
+        properties.setMinHistogramsPerTask(16);
+        LbphSearchEngine engine = new LbphSearchEngine(properties);
+        engines.add(engine);
+        return engine;
+    }
+
+    // Same face with a little sensor noise
+    private byte[] noisy(byte[] face) {
+        byte[] copy = face.clone();
+        for (int i = 0; i < copy.length; i += 7) {
+            copy[i] = (byte) Math.min(255, Math.max(0, (copy[i] & 0xFF) + random.nextInt(21) - 10));
+        }
+        return copy;
+    }
+
+    private static Mat mat(byte[] pixels) {
+        Mat mat = new Mat(SIZE, SIZE, CV_8UC1);
+        mat.data().put(pixels);
+        return mat;
+    }
+
+    private static List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (int label = 0; label < PEOPLE; label++) {
+            names.add("person" + label);
+        }
+        return names;
+    }
+
+    private static double chiSquare(float[] query, float[] stored) {
+        double result = 0;
+        for (int j = 0; j < query.length; j++) {
+            double a = (double) stored[j] - query[j];
+            double b = (double) stored[j] + query[j];
+            if (Math.abs(b) > HistogramScorer.DBL_EPSILON) {
+                result += a * a / b;
+            }
+        }
+        return 2 * result;
+    }
+
+    private static boolean opencvFaceAvailable() {
+        try {
+            Loader.load(opencv_face.class);
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
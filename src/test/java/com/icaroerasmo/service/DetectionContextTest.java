@@ -0,0 +1,82 @@
+package com.icaroerasmo.service;
+
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_dnn.Net;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static com.icaroerasmo.service.DeepLearningFaceDetectionService.MAX_DETECTIONS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.bytedeco.opencv.global.opencv_core.CV_32F;
+
+class DetectionContextTest {
+
+    private static final int ROWS = 4;
+
+    private DetectionContext context;
+
+    @BeforeEach
+    void setUp() {
+        context = new DetectionContext(new Net());
+        // 1 x 1 x rows x 7 like the SSD detection output: image id, label, confidence, box corners
+        float[] rows = {
+                0, 1, .9f, .10f, .20f, .30f, .40f,
+                0, 1, .5f, .50f, .50f, .60f, .60f, // below the confidence threshold
+                1, 1, .8f, .00f, .00f, .50f, .50f, // second frame of the batch
+                0, 1, .7f, .60f, .60f, .50f, .50f  // corners swapped
+        };
+        try (Mat output = new Mat(4, new int[]{1, 1, ROWS, 7}, CV_32F);
+             FloatPointer data = new FloatPointer(output.data())) {
+            data.put(rows);
+            context.getOutputs().resize(1);
+            context.getOutputs().put(0, output);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void readsTheBoxesOfOneFrameOfTheBatch() {
+        int[] boxes = context.boxes(MAX_DETECTIONS);
+
+        int count = DeepLearningFaceDetectionService.readDetections(context.readOutput(), context.detectionRows(),
+                0, 10, 20, 100, 200, boxes, null, 0);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(boxes).startsWith(20, 60, 20, 40, 60, 120, 10, 20);
+    }
+
+    @Test
+    void reusesItsBuffersOnceWarm() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // warm up so the buffers exist and the loop is compiled
+        read(20_000);
+        long allocations = context.getAllocations().get();
+        long heap = threads.getCurrentThreadAllocatedBytes();
+
+        int found = read(1_000);
+
+        assertThat(threads.getCurrentThreadAllocatedBytes() - heap).isZero();
+        assertThat(context.getAllocations().get()).isEqualTo(allocations);
+        assertThat(found).isEqualTo(2_000);
+    }
+
+    private int read(int times) {
+        int found = 0;
+        for (int i = 0; i < times; i++) {
+            int[] boxes = context.boxes(MAX_DETECTIONS);
+            found += DeepLearningFaceDetectionService.readDetections(context.readOutput(), context.detectionRows(),
+                    0, 0, 0, 300, 300, boxes, context.getScores(), 0);
+        }
+        return found;
+    }
+}
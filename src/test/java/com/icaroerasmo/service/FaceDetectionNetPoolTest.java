@@ -0,0 +1,95 @@
+package com.icaroerasmo.service;
+
+import com.icaroerasmo.config.MemoryProperties;
+import com.icaroerasmo.utils.NativeMemoryTracker;
+import org.bytedeco.opencv.opencv_dnn.Net;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pool behaviour with empty networks and a simulated forward pass. The real
+ * frames/sec per pool size, which needs the caffemodel, is measured by the
+ * DetectionPoolBenchmark of the benchmark profile.
+ */
+class FaceDetectionNetPoolTest {
+
+    private static final int FRAMES = 32;
+    private static final long FORWARD_MILLIS = 20;
+
+    // Frames/sec per pool size is left to DetectionPoolBenchmark, here only the bound is checked
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8})
+    void contextIsNeverSharedAndConcurrencyIsBoundedByThePool(int size) throws Exception {
+        FaceDetectionNetPool pool = pool(size);
+        Set<DetectionContext> borrowed = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger shared = new AtomicInteger();
+        // The first callers wait for each other, so every network is busy at once at least once
+        CountDownLatch filled = new CountDownLatch(size);
+
+        ExecutorService callers = Executors.newFixedThreadPool(size * 2);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < FRAMES; i++) {
+                results.add(callers.submit(() -> pool.execute(context -> {
+                    if (!borrowed.add(context)) {
+                        shared.incrementAndGet();
+                    }
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    filled.countDown();
+                    await(filled);
+                    forward();
+                    context.inferred();
+                    running.decrementAndGet();
+                    borrowed.remove(context);
+                    return null;
+                })));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            assertThat(pool.getInferences()).isEqualTo(FRAMES);
+        } finally {
+            callers.shutdownNow();
+            pool.close();
+        }
+
+        assertThat(shared).hasValue(0);
+        assertThat(peak.get()).isEqualTo(size);
+    }
+
+    private static FaceDetectionNetPool pool(int size) {
+        return new FaceDetectionNetPool(size, Net::new, new NativeMemoryTracker(new MemoryProperties()));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stands in for the native forward pass, which does not hold the calling thread's CPU in the JVM
+    private static void forward() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(FORWARD_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
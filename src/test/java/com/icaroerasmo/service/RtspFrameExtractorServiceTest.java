@@ -0,0 +1,38 @@
+package com.icaroerasmo.service;
+
+import com.icaroerasmo.config.MetricsProperties;
+import com.icaroerasmo.config.PipelineProperties;
+import com.icaroerasmo.metrics.MetricsRegistry;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+
+class RtspFrameExtractorServiceTest {
+
+    private final RtspFrameExtractorService service = new RtspFrameExtractorService(new MetricsRegistry(new MetricsProperties()));
+
+    @Test
+    void bgrFramesAreAccepted() throws Exception {
+        PipelineProperties.Grabber options = new PipelineProperties.Grabber();
+
+        try (FFmpegFrameGrabber grabber = service.createGrabber("input.mp4", options)) {
+            assertThat(grabber.getPixelFormat()).isEqualTo(AV_PIX_FMT_BGR24);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gray", "rgb24", "yuv420p", "bgra", "no-such-format"})
+    void formatsDetectionCannotReadAreRejected(String pixelFormat) {
+        PipelineProperties.Grabber options = new PipelineProperties.Grabber();
+        options.setPixelFormat(pixelFormat);
+
+        assertThatThrownBy(() -> service.createGrabber("input.mp4", options))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(pixelFormat);
+    }
+}